@@ -0,0 +1,53 @@
+package com.vita.vitacheck.benchmark;
+
+import com.vita.vitacheck.analyte.AnalyteIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+// AnalyteIndex.canonicalId over the names of a typical bulletin plus the spellings labs vary
+// on, one op = all of them. The misspelled names go through the fuzzy search once, then the memo.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnalyteCanonicalizationBenchmark {
+
+    private static final String[] VARIANTS = {
+            "HGB", "Hemoglobina (HGB)", "Hemoglobină", "LDL-colesterol", "Colesterol HDL",
+            "Trigliceride serice", "Vitamina D3", "Neutrofile %", "Trigliceryde", "Hemoglobina glicozilta"
+    };
+
+    private AnalyteIndex index;
+    private String[] names;
+
+    @Setup
+    public void setUp() {
+        index = BenchmarkData.analyteIndex();
+
+        names = new String[BenchmarkData.ANALYTES.length + VARIANTS.length];
+        for (int i = 0; i < BenchmarkData.ANALYTES.length; i++) {
+            names[i] = BenchmarkData.ANALYTES[i][0];
+        }
+        System.arraycopy(VARIANTS, 0, names, BenchmarkData.ANALYTES.length, VARIANTS.length);
+    }
+
+    @Benchmark
+    public void canonicalId(Blackhole blackhole) {
+        for (String name : names) {
+            blackhole.consume(index.canonicalId(name));
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.vita.vitacheck.benchmark;
+
+import com.vita.vitacheck.dto.AnalyticsQuery;
+import com.vita.vitacheck.dto.MedicalItemsProcessingResponse;
+import com.vita.vitacheck.model.AnalyteSeries;
+import com.vita.vitacheck.model.MedicalTest;
+import com.vita.vitacheck.model.User;
+import com.vita.vitacheck.repository.AnalyteSeriesRepository;
+import com.vita.vitacheck.repository.MedicalTestRepository;
+import com.vita.vitacheck.repository.UserRepository;
+import com.vita.vitacheck.service.MedicalItemsProcessing;
+import com.vita.vitacheck.service.PrincipalCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+// processTestItems on an account whose series aren't materialized yet, i.e. the full
+// group-by-analyte and sort over the history, and reads of the materialized series as they
+// are and downsampled. Repositories are in-memory stand-ins.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(java.util.concurrent.TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnalyticsBenchmark {
+
+    @Param({ "10", "100", "1000", "10000" })
+    public int items;
+
+    private final List<AnalyteSeries> seriesStore = new ArrayList<>();
+    private User user;
+    private MedicalItemsProcessing processing;
+    private AnalyticsQuery downsampled;
+
+    @Setup
+    public void setUp() {
+        BenchmarkData.installEncryptionKey();
+        user = BenchmarkData.user();
+        List<MedicalTest> history = BenchmarkData.history(user, items);
+
+        MedicalTestRepository tests = BenchmarkData.stub(MedicalTestRepository.class,
+                Map.of("findByUserOrderByCollectionDateAscIdAsc", args -> history));
+        AnalyteSeriesRepository series = BenchmarkData.stub(AnalyteSeriesRepository.class, Map.of(
+                "findByUser", args -> new ArrayList<>(seriesStore),
+                "save", args -> {
+                    seriesStore.add((AnalyteSeries) args[0]);
+                    return args[0];
+                }));
+        UserRepository users = BenchmarkData.stub(UserRepository.class,
+                Map.of("findWithLockById", args -> Optional.of(user)));
+
+        processing = new MedicalItemsProcessing(tests, series, users, new PrincipalCache(Duration.ofMinutes(1), 10),
+                BenchmarkData.unitCatalog(), BenchmarkData.analyteIndex());
+        processing.processTestItems(user);
+        downsampled = AnalyticsQuery.builder().maxPoints(60).build();
+    }
+
+    @Benchmark
+    public void processTestItems(Blackhole blackhole) {
+        user.setSeriesVersion(null);
+        seriesStore.clear();
+        List<MedicalItemsProcessingResponse> response = processing.processTestItems(user);
+        blackhole.consume(response);
+    }
+
+    @Benchmark
+    public void readMaterialized(Blackhole blackhole) {
+        blackhole.consume(processing.processTestItems(user));
+    }
+
+    @Benchmark
+    public void readDownsampled(Blackhole blackhole) {
+        blackhole.consume(processing.processTestItems(user, downsampled));
+    }
+}
@@ -0,0 +1,143 @@
+package com.vita.vitacheck.benchmark;
+
+import com.vita.vitacheck.analyte.AnalyteIndex;
+import com.vita.vitacheck.analyte.UnitCatalog;
+import com.vita.vitacheck.config.EncryptionConfig;
+import com.vita.vitacheck.model.MedicalTest;
+import com.vita.vitacheck.model.MedicalTestItem;
+import com.vita.vitacheck.model.User;
+
+import org.springframework.core.io.ClassPathResource;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+
+// Fixtures shared by the benchmarks
+final class BenchmarkData {
+
+    static final String[][] ANALYTES = {
+            { "Hemoglobina", "g/dL" }, { "Hematocrit", "%" }, { "Leucocite", "10^3/uL" },
+            { "Trombocite", "10^3/uL" }, { "Eritrocite", "10^6/uL" }, { "Glucoza", "mg/dL" },
+            { "Colesterol total", "mg/dL" }, { "HDL colesterol", "mg/dL" }, { "LDL colesterol", "mg/dL" },
+            { "Trigliceride", "mg/dL" }, { "Creatinina", "mg/dL" }, { "Uree", "mg/dL" },
+            { "ALT (TGP)", "U/L" }, { "AST (TGO)", "U/L" }, { "GGT", "U/L" }, { "Fier seric", "ug/dL" },
+            { "Feritina", "ng/mL" }, { "TSH", "uUI/mL" }, { "FT4", "ng/dL" }, { "Vitamina D", "ng/mL" },
+            { "Vitamina B12", "pg/mL" }, { "Acid uric", "mg/dL" }, { "Calciu seric", "mg/dL" },
+            { "Magneziu", "mg/dL" }, { "Sodiu", "mmol/L" }, { "Potasiu", "mmol/L" }, { "Proteina C reactiva", "mg/L" },
+            { "VSH", "mm/h" }, { "Hemoglobina glicozilata", "%" }, { "Albumina", "g/l" }
+    };
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+
+    private BenchmarkData() {
+    }
+
+    static void installEncryptionKey() {
+        byte[] key = new byte[32];
+        for (int i = 0; i < key.length; i++) {
+            key[i] = (byte) i;
+        }
+        EncryptionConfig.secretKey = new SecretKeySpec(key, "AES");
+        EncryptionConfig.keyVersion = 1;
+        EncryptionConfig.keysByVersion.put(1, EncryptionConfig.secretKey);
+        EncryptionConfig.blindIndexKey = new SecretKeySpec(key, "HmacSHA256");
+    }
+
+    static User user() {
+        User user = User.builder()
+                .id(1L)
+                .email("benchmark@vitacheck.ro")
+                .cnp("1900101123456")
+                .phoneNumber("0721123456")
+                .build();
+        return user;
+    }
+
+    // itemCount items spread over bulletins of one item per analyte, one bulletin a month
+    static List<MedicalTest> history(User user, int itemCount) {
+        Random random = new Random(42);
+        List<MedicalTest> tests = new ArrayList<>();
+        LocalDate date = LocalDate.of(2015, 1, 10);
+        int created = 0;
+        long id = 1;
+
+        while (created < itemCount) {
+            MedicalTest test = MedicalTest.builder()
+                    .id(id++)
+                    .user(user)
+                    .fileName("buletin-" + id + ".pdf")
+                    .uploadDate(LocalDateTime.of(date, java.time.LocalTime.NOON))
+                    .testDate(date.format(DATE_FORMAT))
+                    .collectionDate(date)
+                    .build();
+
+            for (int i = 0; i < ANALYTES.length && created < itemCount; i++, created++) {
+                MedicalTestItem item = new MedicalTestItem();
+                item.setTestName(ANALYTES[i][0]);
+                item.setUnit(ANALYTES[i][1]);
+                item.setNumericValue(10 + random.nextDouble() * 90);
+                item.setMinReference(20.0);
+                item.setMaxReference(80.0);
+                test.addTestItem(item);
+            }
+            tests.add(test);
+            date = date.plusMonths(1);
+        }
+        return tests;
+    }
+
+    static UnitCatalog unitCatalog() {
+        try {
+            return new UnitCatalog(new ClassPathResource("units.json"));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static AnalyteIndex analyteIndex() {
+        try {
+            return new AnalyteIndex(new ClassPathResource("analytes.json"));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static String resource(String name) {
+        try (InputStream in = BenchmarkData.class.getResourceAsStream("/" + name)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Repository stand-in: the listed methods are answered by the given functions, everything
+    // else returns null (or the saved argument for save*)
+    @SuppressWarnings("unchecked")
+    static <T> T stub(Class<T> type, Map<String, Function<Object[], Object>> methods) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (proxy, method, args) -> {
+            Function<Object[], Object> answer = methods.get(method.getName());
+            if (answer != null) {
+                return answer.apply(args);
+            }
+            if (method.getName().startsWith("save") && args != null && args.length == 1) {
+                return args[0];
+            }
+            if (method.getReturnType() == boolean.class) {
+                return false;
+            }
+            return null;
+        });
+    }
+}
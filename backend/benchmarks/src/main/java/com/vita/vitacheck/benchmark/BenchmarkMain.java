@@ -0,0 +1,26 @@
+package com.vita.vitacheck.benchmark;
+
+import org.openjdk.jmh.Main;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// JMH's own launcher, except results are also written as JSON (target/jmh-result.json) unless
+// -rf/-rff are given, so runs of different releases can be diffed by tooling
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> arguments = new ArrayList<>(Arrays.asList(args));
+        if (!arguments.contains("-rf")) {
+            arguments.addAll(List.of("-rf", "json"));
+        }
+        if (!arguments.contains("-rff")) {
+            arguments.addAll(List.of("-rff", "target/jmh-result.json"));
+        }
+        Main.main(arguments.toArray(String[]::new));
+    }
+}
@@ -0,0 +1,160 @@
+package com.vita.vitacheck.benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vita.vitacheck.config.EncryptionConfig;
+import com.vita.vitacheck.config.LimitsEncryptionConverter;
+import com.vita.vitacheck.config.StringEncryptionConverter;
+import com.vita.vitacheck.model.MedicalTestItemLimits;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// The converters as they are now against the per-call Cipher.getInstance/init versions they
+// replaced (kept below as Legacy*).
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConverterBenchmark {
+
+    private final StringEncryptionConverter stringConverter = new StringEncryptionConverter();
+    private final LimitsEncryptionConverter limitsConverter = new LimitsEncryptionConverter();
+    private final LegacyStringConverter legacyStringConverter = new LegacyStringConverter();
+    private final LegacyLimitsConverter legacyLimitsConverter = new LegacyLimitsConverter();
+
+    private String text;
+    private List<MedicalTestItemLimits> limits;
+    private String encryptedText;
+    private String encryptedLimits;
+    private String legacyEncryptedText;
+    private String legacyEncryptedLimits;
+
+    @Setup
+    public void setUp() {
+        BenchmarkData.installEncryptionKey();
+
+        text = "Hemoglobina glicozilata (HbA1c)";
+        limits = List.of(
+                new MedicalTestItemLimits(4.0, 5.6, "Normal", "NORMAL"),
+                new MedicalTestItemLimits(5.7, 6.4, "Prediabet", "PREDIABET"),
+                new MedicalTestItemLimits(6.5, null, "Diabet", "DIABET"));
+
+        encryptedText = stringConverter.convertToDatabaseColumn(text);
+        encryptedLimits = limitsConverter.convertToDatabaseColumn(limits);
+        legacyEncryptedText = legacyStringConverter.convertToDatabaseColumn(text);
+        legacyEncryptedLimits = legacyLimitsConverter.convertToDatabaseColumn(limits);
+    }
+
+    @Benchmark
+    public String encryptString() {
+        return stringConverter.convertToDatabaseColumn(text);
+    }
+
+    @Benchmark
+    public String decryptString() {
+        return stringConverter.convertToEntityAttribute(encryptedText);
+    }
+
+    // New converter reading a value written by the old one
+    @Benchmark
+    public String decryptLegacyString() {
+        return stringConverter.convertToEntityAttribute(legacyEncryptedText);
+    }
+
+    @Benchmark
+    public String legacyEncryptString() {
+        return legacyStringConverter.convertToDatabaseColumn(text);
+    }
+
+    @Benchmark
+    public String legacyDecryptString() {
+        return legacyStringConverter.convertToEntityAttribute(legacyEncryptedText);
+    }
+
+    @Benchmark
+    public String encryptLimits() {
+        return limitsConverter.convertToDatabaseColumn(limits);
+    }
+
+    @Benchmark
+    public List<MedicalTestItemLimits> decryptLimits() {
+        return limitsConverter.convertToEntityAttribute(encryptedLimits);
+    }
+
+    @Benchmark
+    public String legacyEncryptLimits() {
+        return legacyLimitsConverter.convertToDatabaseColumn(limits);
+    }
+
+    @Benchmark
+    public List<MedicalTestItemLimits> legacyDecryptLimits() {
+        return legacyLimitsConverter.convertToEntityAttribute(legacyEncryptedLimits);
+    }
+
+    static final class LegacyStringConverter {
+
+        String convertToDatabaseColumn(String data) {
+            try {
+                Cipher cipher = Cipher.getInstance("AES");
+                cipher.init(Cipher.ENCRYPT_MODE, EncryptionConfig.secretKey);
+                return Base64.getEncoder().encodeToString(cipher.doFinal(data.getBytes(StandardCharsets.UTF_8)));
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        String convertToEntityAttribute(String dbData) {
+            try {
+                Cipher cipher = Cipher.getInstance("AES");
+                cipher.init(Cipher.DECRYPT_MODE, EncryptionConfig.secretKey);
+                return new String(cipher.doFinal(Base64.getDecoder().decode(dbData)), StandardCharsets.UTF_8);
+            } catch (Exception e) {
+                return dbData;
+            }
+        }
+    }
+
+    static final class LegacyLimitsConverter {
+
+        private static final ObjectMapper mapper = new ObjectMapper();
+
+        String convertToDatabaseColumn(List<MedicalTestItemLimits> data) {
+            try {
+                String json = mapper.writeValueAsString(data);
+                Cipher cipher = Cipher.getInstance("AES");
+                cipher.init(Cipher.ENCRYPT_MODE, EncryptionConfig.secretKey);
+                return Base64.getEncoder().encodeToString(cipher.doFinal(json.getBytes(StandardCharsets.UTF_8)));
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        List<MedicalTestItemLimits> convertToEntityAttribute(String dbData) {
+            try {
+                Cipher cipher = Cipher.getInstance("AES");
+                cipher.init(Cipher.DECRYPT_MODE, EncryptionConfig.secretKey);
+                String json = new String(cipher.doFinal(Base64.getDecoder().decode(dbData)), StandardCharsets.UTF_8);
+                return mapper.readValue(json, new TypeReference<List<MedicalTestItemLimits>>() {});
+            } catch (Exception e) {
+                return null;
+            }
+        }
+    }
+}
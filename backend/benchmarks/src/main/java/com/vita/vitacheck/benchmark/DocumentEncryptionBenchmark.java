@@ -0,0 +1,114 @@
+package com.vita.vitacheck.benchmark;
+
+import com.vita.vitacheck.storage.BlobStore;
+import com.vita.vitacheck.storage.DocumentStorageService;
+import com.vita.vitacheck.storage.StoredDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// The PDF path that replaced ByteArrayEncryptionConverter: streaming chunked encryption into a
+// BlobStore (in memory here) and decryption of the whole file or of one byte range
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DocumentEncryptionBenchmark {
+
+    @Param({ "262144", "4194304" })
+    public int size;
+
+    private DocumentStorageService storage;
+    private byte[] pdf;
+    private String reference;
+
+    @Setup
+    public void setUp() throws IOException {
+        BenchmarkData.installEncryptionKey();
+        storage = new DocumentStorageService(List.of(new InMemoryBlobStore()), null, "mem");
+
+        pdf = new byte[size];
+        new Random(7).nextBytes(pdf);
+        reference = storage.store(new ByteArrayInputStream(pdf)).blobRef();
+    }
+
+    @Benchmark
+    public StoredDocument store() throws IOException {
+        return storage.store(new ByteArrayInputStream(pdf));
+    }
+
+    @Benchmark
+    public void readAll() throws IOException {
+        storage.copyTo(reference, OutputStream.nullOutputStream());
+    }
+
+    // A PDF viewer fetching 64 KiB from the middle of the file
+    @Benchmark
+    public void readRange() throws IOException {
+        storage.copyTo(reference, size / 2, 65536, OutputStream.nullOutputStream());
+    }
+
+    static final class InMemoryBlobStore implements BlobStore {
+
+        private final Map<String, byte[]> blobs = new ConcurrentHashMap<>();
+        private final AtomicLong ids = new AtomicLong();
+
+        @Override
+        public String scheme() {
+            return "mem";
+        }
+
+        @Override
+        public String write(InputStream content) throws IOException {
+            String reference = "mem:" + ids.incrementAndGet();
+            blobs.put(reference, content.readAllBytes());
+            // Only the first blob is read back; the others are dropped to keep the heap flat
+            if (!reference.equals("mem:1")) {
+                blobs.remove(reference);
+            }
+            return reference;
+        }
+
+        @Override
+        public <T> T read(String reference, long offset, BlobReader<T> reader) throws IOException {
+            byte[] blob = blobs.get(reference);
+            return reader.read(new ByteArrayInputStream(blob, (int) offset, blob.length - (int) offset));
+        }
+
+        @Override
+        public long size(String reference) {
+            return blobs.get(reference).length;
+        }
+
+        @Override
+        public void delete(String reference) {
+            blobs.remove(reference);
+        }
+
+        @Override
+        public List<String> list() {
+            return List.copyOf(blobs.keySet());
+        }
+    }
+}
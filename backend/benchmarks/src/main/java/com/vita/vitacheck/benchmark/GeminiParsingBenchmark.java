@@ -0,0 +1,50 @@
+package com.vita.vitacheck.benchmark;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.vita.vitacheck.dto.MedicalTestItemResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// A Gemini extraction of a 30 analyte bulletin into MedicalTestItemResponse
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeminiParsingBenchmark {
+
+    private ObjectMapper objectMapper;
+    private ObjectReader reader;
+    private String json;
+
+    @Setup
+    public void setUp() {
+        // Same leniency as the Spring Boot mapper used by MedicalTestService
+        objectMapper = new ObjectMapper().disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        reader = objectMapper.readerFor(MedicalTestItemResponse.class);
+        json = BenchmarkData.resource("gemini-extraction.json");
+    }
+
+    @Benchmark
+    public MedicalTestItemResponse readValue() throws Exception {
+        return objectMapper.readValue(json, MedicalTestItemResponse.class);
+    }
+
+    @Benchmark
+    public MedicalTestItemResponse objectReader() throws Exception {
+        return reader.readValue(json);
+    }
+}
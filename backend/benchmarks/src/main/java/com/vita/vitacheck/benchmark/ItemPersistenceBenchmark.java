@@ -0,0 +1,227 @@
+package com.vita.vitacheck.benchmark;
+
+import com.vita.vitacheck.model.MedicalTest;
+import com.vita.vitacheck.model.MedicalTestItem;
+import com.vita.vitacheck.model.User;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.model.naming.CamelCaseToUnderscoresNamingStrategy;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.postgresql.ds.PGSimpleDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// Saving the items of one analyzed bulletin, as MedicalTestService.analyzeTest does: a first
+// analysis, and a re-analysis that bulk deletes the previous items. batchSize=1 is one INSERT
+// round trip per item, what IDENTITY ids forced. Each transaction is timed up to its commit.
+// The JDBC round trips are reported as secondary results (RoundTrips), also in jmh-result.json.
+//
+// Needs a PostgreSQL database it may create tables in:
+//   BENCH_DB_URL=jdbc:postgresql://localhost:5432/vitacheck_bench BENCH_DB_USER=... BENCH_DB_PASSWORD=...
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ItemPersistenceBenchmark {
+
+    private static final Set<String> EXECUTE_METHODS = Set.of("execute", "executeQuery", "executeUpdate",
+            "executeLargeUpdate", "executeBatch", "executeLargeBatch");
+
+    @Param({ "1", "50" })
+    public int batchSize;
+
+    @Param({ "60" })
+    public int items;
+
+    private SessionFactory sessionFactory;
+    private User user;
+    private Long reanalyzedTestId;
+    // Since the trial started; each benchmark call adds its own share to RoundTrips
+    private long roundTrips;
+
+    @Setup
+    public void setUp() {
+        String url = System.getenv("BENCH_DB_URL");
+        if (url == null) {
+            throw new IllegalStateException("Set BENCH_DB_URL, BENCH_DB_USER and BENCH_DB_PASSWORD to a PostgreSQL database");
+        }
+        BenchmarkData.installEncryptionKey();
+
+        PGSimpleDataSource dataSource = new PGSimpleDataSource();
+        dataSource.setUrl(url);
+        dataSource.setUser(System.getenv("BENCH_DB_USER"));
+        dataSource.setPassword(System.getenv("BENCH_DB_PASSWORD"));
+        dataSource.setReWriteBatchedInserts(true);
+
+        // The settings Spring Boot and application.yaml give the backend
+        Configuration configuration = new Configuration()
+                .addAnnotatedClass(User.class)
+                .addAnnotatedClass(MedicalTest.class)
+                .addAnnotatedClass(MedicalTestItem.class)
+                .setPhysicalNamingStrategy(new CamelCaseToUnderscoresNamingStrategy());
+        configuration.getProperties().put(AvailableSettings.DATASOURCE, countingDataSource(dataSource));
+        configuration.setProperty(AvailableSettings.HBM2DDL_AUTO, "update");
+        configuration.setProperty(AvailableSettings.JAKARTA_VALIDATION_MODE, "none");
+        configuration.setProperty(AvailableSettings.STATEMENT_BATCH_SIZE, String.valueOf(batchSize));
+        configuration.setProperty(AvailableSettings.ORDER_INSERTS, "true");
+        configuration.setProperty(AvailableSettings.ORDER_UPDATES, "true");
+        sessionFactory = configuration.buildSessionFactory();
+
+        // Unique per trial, the blind indexes of cnp and phone number are unique columns
+        String suffix = String.valueOf(System.nanoTime());
+        user = User.builder()
+                .email("benchmark-" + suffix + "@vitacheck.ro")
+                .password("-")
+                .cnp(suffix)
+                .phoneNumber(suffix)
+                .build();
+        sessionFactory.inTransaction(session -> session.persist(user));
+
+        MedicalTest test = bulletin();
+        sessionFactory.inTransaction(session -> session.persist(test));
+        reanalyzedTestId = test.getId();
+    }
+
+    @TearDown
+    public void tearDown() {
+        sessionFactory.close();
+    }
+
+    @Benchmark
+    public void analyze(RoundTrips counters) {
+        long before = roundTrips;
+        MedicalTest test = bulletin();
+        sessionFactory.inTransaction(session -> session.persist(test));
+        counters.add(roundTrips - before);
+    }
+
+    @Benchmark
+    public void reanalyze(RoundTrips counters) {
+        long before = roundTrips;
+        sessionFactory.inTransaction(session -> {
+            MedicalTest test = session.get(MedicalTest.class, reanalyzedTestId);
+            session.createMutationQuery("delete from MedicalTestItem i where i.medicalTest = :medicalTest")
+                    .setParameter("medicalTest", test)
+                    .executeUpdate();
+            test.getTestItems().clear();
+            addItems(test);
+        });
+        counters.add(roundTrips - before);
+    }
+
+    // Totals per iteration, JMH sums them over the iterations: roundTrips / bulletins is the
+    // number of round trips one bulletin costs
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class RoundTrips {
+
+        public long roundTrips;
+        public long bulletins;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            roundTrips = 0;
+            bulletins = 0;
+        }
+
+        void add(long bulletinRoundTrips) {
+            roundTrips += bulletinRoundTrips;
+            bulletins++;
+        }
+    }
+
+    private MedicalTest bulletin() {
+        MedicalTest test = MedicalTest.builder()
+                .user(user)
+                .fileName("buletin.pdf")
+                .fileType("application/pdf")
+                .uploadDate(LocalDateTime.now())
+                .laboratoryName("Synevo")
+                .testDate("10-01-2024")
+                .collectionDate(LocalDate.of(2024, 1, 10))
+                .build();
+        addItems(test);
+        return test;
+    }
+
+    private void addItems(MedicalTest test) {
+        for (int i = 0; i < items; i++) {
+            String[] analyte = BenchmarkData.ANALYTES[i % BenchmarkData.ANALYTES.length];
+            MedicalTestItem item = new MedicalTestItem();
+            item.setTestName(analyte[0]);
+            item.setUnit(analyte[1]);
+            item.setNumericValue(10.0 + i);
+            item.setMinReference(20.0);
+            item.setMaxReference(80.0);
+            test.addTestItem(item);
+        }
+    }
+
+    // Counts statement executions and commits, each one a round trip to the database
+    private DataSource countingDataSource(DataSource target) {
+        return (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(), new Class<?>[] { DataSource.class },
+                (proxy, method, args) -> {
+                    Object result = invoke(target, method, args);
+                    return result instanceof Connection connection ? countingConnection(connection) : result;
+                });
+    }
+
+    private Connection countingConnection(Connection target) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class },
+                (proxy, method, args) -> {
+                    if (method.getName().equals("commit")) {
+                        roundTrips++;
+                    }
+                    Object result = invoke(target, method, args);
+                    return result instanceof Statement statement ? countingStatement(statement) : result;
+                });
+    }
+
+    private Statement countingStatement(Statement target) {
+        Class<?> type = target instanceof CallableStatement ? CallableStatement.class
+                : target instanceof PreparedStatement ? PreparedStatement.class
+                : Statement.class;
+        return (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[] { type },
+                (proxy, method, args) -> {
+                    if (EXECUTE_METHODS.contains(method.getName())) {
+                        roundTrips++;
+                    }
+                    return invoke(target, method, args);
+                });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.vita.vitacheck.benchmark;
+
+import com.vita.vitacheck.model.User;
+import com.vita.vitacheck.service.JwtService;
+import io.jsonwebtoken.Claims;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtBenchmark {
+
+    private JwtService jwtService;
+    private User user;
+    private String token;
+
+    @Setup
+    public void setUp() throws Exception {
+        jwtService = new JwtService();
+        set("secretKey", Base64.getEncoder().encodeToString(new byte[32]));
+        set("jwtExpiration", 86_400_000L);
+        Method init = JwtService.class.getDeclaredMethod("init");
+        init.setAccessible(true);
+        init.invoke(jwtService);
+
+        user = BenchmarkData.user();
+        token = jwtService.generateToken(user);
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return jwtService.generateToken(user);
+    }
+
+    // What JwtAuthenticationFilter does per request
+    @Benchmark
+    public Claims parseVerifiedClaims() {
+        return jwtService.parseVerifiedClaims(token);
+    }
+
+    // The previous filter path: subject, then subject and expiry again, three parses in total
+    @Benchmark
+    public boolean extractUsernameAndValidate() {
+        jwtService.extractUsername(token);
+        return jwtService.isTokenValid(token, user);
+    }
+
+    private void set(String name, Object value) throws Exception {
+        Field field = JwtService.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(jwtService, value);
+    }
+}
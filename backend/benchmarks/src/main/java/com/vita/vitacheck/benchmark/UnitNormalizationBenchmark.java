@@ -0,0 +1,59 @@
+package com.vita.vitacheck.benchmark;
+
+import com.vita.vitacheck.analyte.AnalyteIndex;
+import com.vita.vitacheck.analyte.UnitCatalog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+// UnitCatalog.normalize over the analytes and units of a typical bulletin, one op = all of them
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UnitNormalizationBenchmark {
+
+    private UnitCatalog catalog;
+    private Integer[] analytes;
+    private String[] units;
+
+    @Setup
+    public void setUp() {
+        catalog = BenchmarkData.unitCatalog();
+        AnalyteIndex index = BenchmarkData.analyteIndex();
+
+        analytes = new Integer[BenchmarkData.ANALYTES.length + 4];
+        units = new String[analytes.length];
+        for (int i = 0; i < BenchmarkData.ANALYTES.length; i++) {
+            analytes[i] = index.canonicalId(BenchmarkData.ANALYTES[i][0]);
+            units[i] = BenchmarkData.ANALYTES[i][1];
+        }
+        analytes[units.length - 4] = index.canonicalId("Leucocite");
+        units[units.length - 4] = "10^9/L";
+        analytes[units.length - 3] = index.canonicalId("Trombocite");
+        units[units.length - 3] = "x10^3/uL";
+        analytes[units.length - 2] = index.canonicalId("Eritrocite");
+        units[units.length - 2] = "10*6/ uL";
+        analytes[units.length - 1] = index.canonicalId("Glucoza");
+        units[units.length - 1] = "mmol/L";
+    }
+
+    @Benchmark
+    public void normalizeUnit(Blackhole blackhole) {
+        for (int i = 0; i < units.length; i++) {
+            blackhole.consume(catalog.normalize(analytes[i], units[i]));
+        }
+    }
+}
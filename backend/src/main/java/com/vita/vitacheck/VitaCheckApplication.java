@@ -3,8 +3,10 @@ package com.vita.vitacheck;
 import io.github.cdimascio.dotenv.Dotenv; // Import this
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class VitaCheckApplication {
 
     public static void main(String[] args) {
@@ -0,0 +1,276 @@
+package com.vita.vitacheck.analyte;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Maps the analyte names labs print ("Hemoglobina", "HGB", "Hemoglobina (HGB)") to a stable
+// canonical id from a JSON dictionary (analytes.json unless app.analytes.dictionary points
+// elsewhere). Names and synonyms are compiled into a trie over folded chars; a name resolves by
+//
+//   1. an exact synonym,
+//   2. the longest synonym it starts with, when a qualifier follows: "Hemoglobina (HGB)",
+//   3. a synonym within a small edit distance, only when that is unambiguous.
+//
+// Ids are never reused, so ids stored on items stay valid when the dictionary grows.
+@Component
+public class AnalyteIndex {
+
+    private static final int NO_MATCH = -1;
+    private static final int MEMO_LIMIT = 10_000;
+    // What may follow a synonym for a prefix match. "%" is not one, "Limfocite %" is its own analyte,
+    // and neither are "/" and "*": "LDL/HDL" is a ratio, not LDL
+    private static final String QUALIFIER_START = "([,:;";
+
+    private final int version;
+    private final Map<Integer, String> names;
+    private final Node root = new Node();
+    private final Map<String, Integer> memo = new ConcurrentHashMap<>();
+
+    public AnalyteIndex(@Value("${app.analytes.dictionary:classpath:analytes.json}") Resource dictionary)
+            throws IOException {
+        DictionaryFile file;
+        try (InputStream in = dictionary.getInputStream()) {
+            file = new ObjectMapper()
+                    .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+                    .readValue(in, DictionaryFile.class);
+        }
+
+        this.version = file.version();
+        this.names = new HashMap<>();
+        for (AnalyteDefinition analyte : file.analytes()) {
+            if (names.putIfAbsent(analyte.id(), analyte.name()) != null) {
+                throw new IllegalStateException("Duplicate analyte id " + analyte.id() + " in the dictionary");
+            }
+            insert(analyte.name(), analyte.id());
+            for (String synonym : analyte.synonyms()) {
+                insert(synonym, analyte.id());
+            }
+        }
+
+        System.out.println("Analyte dictionary v" + version + " loaded: " + names.size() + " analytes");
+    }
+
+    public int version() {
+        return version;
+    }
+
+    // The canonical id of testName, or null when the dictionary does not know it
+    public Integer canonicalId(String testName) {
+        if (testName == null) {
+            return null;
+        }
+        Integer id = exactOrPrefix(testName);
+        if (id != NO_MATCH) {
+            return id;
+        }
+
+        Integer memoized = memo.get(testName);
+        if (memoized == null) {
+            memoized = fuzzy(foldName(testName));
+            if (memo.size() >= MEMO_LIMIT) {
+                memo.clear();
+            }
+            memo.put(testName, memoized);
+        }
+        return memoized != NO_MATCH ? memoized : null;
+    }
+
+    // Display name of a canonical analyte, null for an id the dictionary no longer has
+    public String name(int id) {
+        return names.get(id);
+    }
+
+    // Walks the trie over the raw name, folding as it goes, so a hit allocates nothing
+    private int exactOrPrefix(String testName) {
+        Node node = root;
+        int prefixId = NO_MATCH;
+        // "Limfocite (LYM%)" is a percentage, the qualifier must not turn it into the count
+        boolean percent = testName.indexOf('%') >= 0;
+        int i = 0;
+        int length = testName.length();
+        for (; i < length && node != null; i++) {
+            char c = testName.charAt(i);
+            if (FoldedKeyTable.isIgnored(c) || isPunctuation(c)) {
+                continue;
+            }
+            if (node.id != NO_MATCH && QUALIFIER_START.indexOf(c) >= 0
+                    && percent == (node.synonym.indexOf('%') >= 0)) {
+                prefixId = node.id;
+            }
+            node = node.child(FoldedKeyTable.fold(c));
+        }
+        if (i == length && node != null && node.id != NO_MATCH) {
+            return node.id;
+        }
+        return prefixId;
+    }
+
+    // Bounded Levenshtein search over the trie, one DP row per node on the path. Branches whose
+    // best cell already exceeds the bound are cut, so only a sliver of the trie is visited.
+    private int fuzzy(String query) {
+        int maxDistance = query.length() >= 12 ? 2 : query.length() >= 6 ? 1 : 0;
+        if (maxDistance == 0) {
+            return NO_MATCH;
+        }
+        int[] firstRow = new int[query.length() + 1];
+        for (int i = 0; i < firstRow.length; i++) {
+            firstRow[i] = i;
+        }
+
+        Search search = new Search(query, maxDistance);
+        for (int i = 0; i < root.keys.length; i++) {
+            search.visit(root.children[i], root.keys[i], firstRow);
+        }
+        return search.ambiguous ? NO_MATCH : search.bestId;
+    }
+
+    private void insert(String synonym, int id) {
+        Node node = root;
+        for (int i = 0; i < synonym.length(); i++) {
+            char c = synonym.charAt(i);
+            if (!FoldedKeyTable.isIgnored(c) && !isPunctuation(c)) {
+                node = node.childOrCreate(FoldedKeyTable.fold(c));
+            }
+        }
+        if (node.id != NO_MATCH && node.id != id) {
+            throw new IllegalStateException("\"" + synonym + "\" names analytes " + node.id + " and " + id);
+        }
+        node.id = id;
+        node.synonym = foldName(synonym);
+    }
+
+    // The chars the trie holds for name; the exact path walks them without building this string
+    private static String foldName(String name) {
+        StringBuilder folded = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (!FoldedKeyTable.isIgnored(c) && !isPunctuation(c)) {
+                folded.append(FoldedKeyTable.fold(c));
+            }
+        }
+        return folded.toString();
+    }
+
+    // Dropped like whitespace: "LDL-colesterol" is "LDL colesterol"
+    private static boolean isPunctuation(char c) {
+        return c == '-' || c == '.' || c == '_';
+    }
+
+    private static final class Search {
+
+        private final String query;
+        private final int maxDistance;
+        private int bestId = NO_MATCH;
+        private int bestDistance = Integer.MAX_VALUE;
+        private boolean ambiguous;
+
+        Search(String query, int maxDistance) {
+            this.query = query;
+            this.maxDistance = maxDistance;
+        }
+
+        void visit(Node node, char c, int[] previous) {
+            int[] row = new int[previous.length];
+            row[0] = previous[0] + 1;
+            int best = row[0];
+            for (int i = 1; i < row.length; i++) {
+                int cost = query.charAt(i - 1) == c ? 0 : 1;
+                row[i] = Math.min(Math.min(row[i - 1] + 1, previous[i] + 1), previous[i - 1] + cost);
+                best = Math.min(best, row[i]);
+            }
+
+            int distance = row[row.length - 1];
+            if (node.id != NO_MATCH && distance <= maxDistance && sameDigits(node.synonym)) {
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    bestId = node.id;
+                    ambiguous = false;
+                } else if (distance == bestDistance && node.id != bestId) {
+                    ambiguous = true;
+                }
+            }
+
+            if (best <= maxDistance) {
+                for (int i = 0; i < node.keys.length; i++) {
+                    visit(node.children[i], node.keys[i], row);
+                }
+            }
+        }
+
+        // "Vitamina B6" is two edits from "Vitamina B12", and "Neutrofile %" one from "Neutrofile"
+        private boolean sameDigits(String synonym) {
+            return significant(query).equals(significant(synonym));
+        }
+
+        private static String significant(String folded) {
+            StringBuilder kept = new StringBuilder();
+            for (int i = 0; i < folded.length(); i++) {
+                char c = folded.charAt(i);
+                if (Character.isDigit(c) || c == '%' || c == '#') {
+                    kept.append(c);
+                }
+            }
+            return kept.toString();
+        }
+    }
+
+    // Children in sorted arrays: most nodes have one or two, a map per node would dwarf the data
+    private static final class Node {
+
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private int id = NO_MATCH;
+        private String synonym;
+
+        Node child(char c) {
+            int slot = Arrays.binarySearch(keys, c);
+            return slot >= 0 ? children[slot] : null;
+        }
+
+        Node childOrCreate(char c) {
+            int slot = Arrays.binarySearch(keys, c);
+            if (slot >= 0) {
+                return children[slot];
+            }
+            int insertAt = -slot - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[keys.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, insertAt);
+            System.arraycopy(children, 0, newChildren, 0, insertAt);
+            System.arraycopy(keys, insertAt, newKeys, insertAt + 1, keys.length - insertAt);
+            System.arraycopy(children, insertAt, newChildren, insertAt + 1, keys.length - insertAt);
+            newKeys[insertAt] = c;
+            newChildren[insertAt] = new Node();
+            keys = newKeys;
+            children = newChildren;
+            return newChildren[insertAt];
+        }
+    }
+
+    // The layout of the dictionary file
+    private record DictionaryFile(int version, List<AnalyteDefinition> analytes) {
+
+        DictionaryFile {
+            analytes = analytes != null ? analytes : List.of();
+        }
+    }
+
+    private record AnalyteDefinition(int id, String name, List<String> synonyms) {
+
+        AnalyteDefinition {
+            synonyms = synonyms != null ? synonyms : List.of();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.vita.vitacheck.analyte;
+
+import java.util.Map;
+
+// Read-only open addressing table whose keys compare with case, whitespace and diacritics
+// ignored: "10^3 / uL", "10^3/µl" and "10^3/UL" are the same key. Lookups fold the probe one
+// char at a time, so a hit or a miss allocates nothing. A key starting with one of the letters in
+// keepCase compares that letter as written: "G/L" is giga per liter, "g/L" grams, while "MG/DL"
+// still finds "mg/dL".
+final class FoldedKeyTable<V> {
+
+    private final String[] keys;
+    private final Object[] values;
+    private final int mask;
+    private final String keepCase;
+
+    FoldedKeyTable(Map<String, V> entries, String keepCase) {
+        this.keepCase = keepCase;
+        int capacity = Integer.highestOneBit(Math.max(4, entries.size() * 2 - 1)) << 1;
+        this.keys = new String[capacity];
+        this.values = new Object[capacity];
+        this.mask = capacity - 1;
+
+        for (Map.Entry<String, V> entry : entries.entrySet()) {
+            String key = fold(entry.getKey());
+            int slot = hash(key) & mask;
+            while (keys[slot] != null && !keys[slot].equals(key)) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = entry.getValue();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(CharSequence raw) {
+        if (raw == null) {
+            return null;
+        }
+        for (int slot = hash(raw) & mask; keys[slot] != null; slot = (slot + 1) & mask) {
+            if (matches(keys[slot], raw)) {
+                return (V) values[slot];
+            }
+        }
+        return null;
+    }
+
+    // The stored form of a key; only used while building, lookups never materialize it
+    private String fold(CharSequence raw) {
+        StringBuilder folded = new StringBuilder(raw.length());
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (!isIgnored(c)) {
+                folded.append(foldKey(c, folded.length() == 0));
+            }
+        }
+        return folded.toString();
+    }
+
+    private int hash(CharSequence raw) {
+        int h = 0;
+        boolean first = true;
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (!isIgnored(c)) {
+                h = 31 * h + foldKey(c, first);
+                first = false;
+            }
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private boolean matches(String key, CharSequence raw) {
+        int k = 0;
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (isIgnored(c)) {
+                continue;
+            }
+            if (k == key.length() || key.charAt(k) != foldKey(c, k++ == 0)) {
+                return false;
+            }
+        }
+        return k == key.length();
+    }
+
+    private char foldKey(char c, boolean first) {
+        return first && keepCase.indexOf(c) >= 0 ? c : fold(c);
+    }
+
+    // Whitespace (no-break space included) and the combining marks of decomposed text ("a" + U+0306)
+    static boolean isIgnored(char c) {
+        return Character.isWhitespace(c) || c == '\u00a0' || Character.getType(c) == Character.NON_SPACING_MARK;
+    }
+
+    static char fold(char c) {
+        c = Character.toLowerCase(c);
+        return switch (c) {
+            case 'ă', 'â' -> 'a';
+            case 'î' -> 'i';
+            case 'ș', 'ş' -> 's';
+            case 'ț', 'ţ' -> 't';
+            // Micro sign and Greek mu, and the "u" labs type when they have neither
+            case 'µ', 'μ' -> 'u';
+            default -> c;
+        };
+    }
+}
@@ -0,0 +1,255 @@
+package com.vita.vitacheck.analyte;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vita.vitacheck.model.MedicalTestItemLimits;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalDouble;
+
+// Canonical units and the factors between them, loaded once from a JSON catalog (units.json on
+// the classpath unless app.units.catalog points elsewhere). Everything a lookup needs is
+// precomputed at load time: normalize() is two table probes and returns shared instances.
+// Analytes are named by their analytes.json id, so a conversion follows every synonym of it.
+@Component
+public class UnitCatalog {
+
+    // What a value expressed in some unit becomes: multiply it by factor and label it unit
+    public record Conversion(String unit, double factor) {
+
+        public boolean isIdentity() {
+            return factor == 1.0;
+        }
+
+        public Double apply(Double value) {
+            if (value == null || isIdentity()) {
+                return value;
+            }
+            // Ten significant digits, so 140 g/L becomes 14 g/dL and not 14.000000000000002
+            return new BigDecimal(value * factor).round(PRECISION).doubleValue();
+        }
+
+        public List<MedicalTestItemLimits> apply(List<MedicalTestItemLimits> limits) {
+            if (limits == null || isIdentity()) {
+                return limits;
+            }
+            List<MedicalTestItemLimits> converted = new ArrayList<>(limits.size());
+            for (MedicalTestItemLimits limit : limits) {
+                converted.add(new MedicalTestItemLimits(apply(limit.lowerBound()), apply(limit.upperBound()),
+                        limit.label(), limit.status()));
+            }
+            return converted;
+        }
+    }
+
+    private static final Conversion NO_UNIT = new Conversion("", 1.0);
+    private static final MathContext PRECISION = new MathContext(10);
+    // SI prefixes that only differ from a mass unit by case: "G/L" is 10^9/L, "T/L" 10^12/L
+    private static final String PREFIX_LETTERS = "GgTt";
+
+    private final int version;
+    // Any spelling of a unit -> its canonical unit, converted to the generally preferred unit
+    private final FoldedKeyTable<UnitEntry> units;
+    // Analyte id -> the unit its values are kept in and how to get there from each known unit
+    private final Map<Integer, AnalyteEntry> analytes;
+    private final Map<String, Map<String, Double>> conversions;
+
+    public UnitCatalog(@Value("${app.units.catalog:classpath:units.json}") Resource catalog) throws IOException {
+        CatalogFile file;
+        try (InputStream in = catalog.getInputStream()) {
+            file = new ObjectMapper()
+                    .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+                    .readValue(in, CatalogFile.class);
+        }
+
+        this.version = file.version();
+
+        // Conversions may name units by any alias; the graph only holds canonical spellings
+        Map<String, String> spellings = new LinkedHashMap<>();
+        for (UnitDefinition definition : file.units()) {
+            spellings.put(definition.unit(), definition.unit());
+            for (String alias : definition.aliases()) {
+                spellings.put(alias, definition.unit());
+            }
+        }
+        FoldedKeyTable<String> canonical = new FoldedKeyTable<>(spellings, PREFIX_LETTERS);
+
+        this.conversions = new HashMap<>();
+        for (ConversionDefinition definition : file.conversions()) {
+            addEdge(conversions, canonical(canonical, definition.from()), canonical(canonical, definition.to()),
+                    definition.factor());
+        }
+
+        Map<String, UnitEntry> unitEntries = new LinkedHashMap<>();
+        Map<String, UnitEntry> byUnit = new HashMap<>();
+        for (UnitDefinition definition : file.units()) {
+            String target = canonical(canonical, file.preferred().get(definition.unit()));
+            OptionalDouble factor = factor(conversions, definition.unit(), target);
+            byUnit.put(definition.unit(), new UnitEntry(definition.unit(), factor.isPresent()
+                    ? new Conversion(target, factor.getAsDouble())
+                    : new Conversion(definition.unit(), 1.0)));
+        }
+        spellings.forEach((spelling, unit) -> unitEntries.put(spelling, byUnit.get(unit)));
+        this.units = new FoldedKeyTable<>(unitEntries, PREFIX_LETTERS);
+
+        this.analytes = new HashMap<>();
+        for (AnalyteDefinition definition : file.analytes()) {
+            String target = canonical(canonical, definition.unit());
+            Map<String, Map<String, Double>> edges = copy(conversions);
+            for (AnalyteConversion conversion : definition.conversions()) {
+                addEdge(edges, canonical(canonical, conversion.from()), target, conversion.factor());
+            }
+
+            Map<String, Conversion> from = new HashMap<>();
+            from.put(target, new Conversion(target, 1.0));
+            for (String unit : edges.keySet()) {
+                OptionalDouble factor = factor(edges, unit, target);
+                if (factor.isPresent()) {
+                    from.putIfAbsent(unit, new Conversion(target, factor.getAsDouble()));
+                }
+            }
+
+            AnalyteEntry entry = new AnalyteEntry(edges, from);
+            for (int id : definition.ids()) {
+                if (analytes.putIfAbsent(id, entry) != null) {
+                    throw new IllegalStateException("Analyte " + id + " has two entries in the unit catalog");
+                }
+            }
+        }
+    }
+
+    // Changes whenever the catalog does, so stored series can tell they were built with an older one
+    public int version() {
+        return version;
+    }
+
+    // The spelling the catalog uses for rawUnit, or rawUnit itself when it is not in the catalog
+    public String canonicalUnit(String rawUnit) {
+        UnitEntry entry = units.get(rawUnit);
+        return entry != null ? entry.unit() : rawUnit;
+    }
+
+    // How to express a value of analyte (its canonical id, null when unknown) measured in rawUnit in
+    // the unit it is kept in
+    public Conversion normalize(Integer analyteId, String rawUnit) {
+        if (rawUnit == null) {
+            return NO_UNIT;
+        }
+        UnitEntry entry = units.get(rawUnit);
+        if (entry == null) {
+            return new Conversion(rawUnit, 1.0);
+        }
+        AnalyteEntry analyteEntry = analyteId != null ? analytes.get(analyteId) : null;
+        if (analyteEntry != null) {
+            Conversion conversion = analyteEntry.from().get(entry.unit());
+            if (conversion != null) {
+                return conversion;
+            }
+        }
+        return entry.preferred();
+    }
+
+    // Factor between two units of the same analyte; empty when the catalog has no path between them
+    public OptionalDouble factor(Integer analyteId, String fromUnit, String toUnit) {
+        String from = canonicalUnit(fromUnit);
+        String to = canonicalUnit(toUnit);
+        if (from != null && from.equals(to)) {
+            return OptionalDouble.of(1.0);
+        }
+        AnalyteEntry analyteEntry = analyteId != null ? analytes.get(analyteId) : null;
+        return factor(analyteEntry != null ? analyteEntry.edges() : conversions, from, to);
+    }
+
+    // Breadth first over the conversion graph, multiplying factors along the path
+    private static OptionalDouble factor(Map<String, Map<String, Double>> edges, String from, String to) {
+        if (from == null || to == null) {
+            return OptionalDouble.empty();
+        }
+        Map<String, Double> reached = new HashMap<>();
+        Deque<String> queue = new ArrayDeque<>();
+        reached.put(from, 1.0);
+        queue.add(from);
+        while (!queue.isEmpty()) {
+            String unit = queue.poll();
+            double factor = reached.get(unit);
+            if (unit.equals(to)) {
+                return OptionalDouble.of(factor);
+            }
+            for (Map.Entry<String, Double> edge : edges.getOrDefault(unit, Map.of()).entrySet()) {
+                if (reached.putIfAbsent(edge.getKey(), factor * edge.getValue()) == null) {
+                    queue.add(edge.getKey());
+                }
+            }
+        }
+        return OptionalDouble.empty();
+    }
+
+    private static String canonical(FoldedKeyTable<String> spellings, String unit) {
+        String canonical = spellings.get(unit);
+        return canonical != null ? canonical : unit;
+    }
+
+    private static void addEdge(Map<String, Map<String, Double>> edges, String from, String to, double factor) {
+        edges.computeIfAbsent(from, unit -> new HashMap<>()).put(to, factor);
+        edges.computeIfAbsent(to, unit -> new HashMap<>()).put(from, 1.0 / factor);
+    }
+
+    private static Map<String, Map<String, Double>> copy(Map<String, Map<String, Double>> edges) {
+        Map<String, Map<String, Double>> copy = new HashMap<>();
+        edges.forEach((unit, targets) -> copy.put(unit, new HashMap<>(targets)));
+        return copy;
+    }
+
+    private record UnitEntry(String unit, Conversion preferred) {
+    }
+
+    private record AnalyteEntry(Map<String, Map<String, Double>> edges, Map<String, Conversion> from) {
+    }
+
+    // The layout of the catalog file
+    private record CatalogFile(int version, List<UnitDefinition> units, List<ConversionDefinition> conversions,
+            Map<String, String> preferred, List<AnalyteDefinition> analytes) {
+
+        CatalogFile {
+            units = units != null ? units : List.of();
+            conversions = conversions != null ? conversions : List.of();
+            preferred = preferred != null ? preferred : Map.of();
+            analytes = analytes != null ? analytes : List.of();
+        }
+    }
+
+    private record UnitDefinition(String unit, List<String> aliases) {
+
+        UnitDefinition {
+            aliases = aliases != null ? aliases : List.of();
+        }
+    }
+
+    private record ConversionDefinition(String from, String to, double factor) {
+    }
+
+    private record AnalyteDefinition(List<Integer> ids, String unit, List<AnalyteConversion> conversions) {
+
+        AnalyteDefinition {
+            ids = ids != null ? ids : List.of();
+            conversions = conversions != null ? conversions : List.of();
+        }
+    }
+
+    private record AnalyteConversion(String from, double factor) {
+    }
+}
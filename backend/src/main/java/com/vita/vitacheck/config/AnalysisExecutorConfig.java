@@ -0,0 +1,33 @@
+package com.vita.vitacheck.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+public class AnalysisExecutorConfig {
+
+    @Value("${app.analysis.workers:4}")
+    private int workers;
+
+    @Value("${app.analysis.queue-capacity:100}")
+    private int queueCapacity;
+
+    // Fixed number of virtual-thread workers with a bounded queue: a full queue rejects new jobs
+    // instead of piling up Gemini calls that would all hit the rate limit anyway.
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService analysisExecutor() {
+        return new ThreadPoolExecutor(
+                workers,
+                workers,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(queueCapacity),
+                Thread.ofVirtual().name("analysis-", 0).factory());
+    }
+}
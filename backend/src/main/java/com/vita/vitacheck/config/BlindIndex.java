@@ -0,0 +1,46 @@
+package com.vita.vitacheck.config;
+
+import javax.crypto.Mac;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.HexFormat;
+
+// Keyed HMAC-SHA256 of a normalized value, stored next to an encrypted column so it can be
+// searched by equality (and indexed) whatever encryption the column itself uses.
+public final class BlindIndex {
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private static final ThreadLocal<Mac> MAC = ThreadLocal.withInitial(() -> {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(EncryptionConfig.blindIndexKey);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not initialize the blind index", e);
+        }
+    });
+
+    private BlindIndex() {
+    }
+
+    public static String cnp(String cnp) {
+        return cnp == null ? null : of("cnp", cnp.replaceAll("\\s+", ""));
+    }
+
+    // Separators are dropped, so "0721 123 456" and "0721-123-456" match
+    public static String phoneNumber(String phoneNumber) {
+        return phoneNumber == null ? null : of("phone", phoneNumber.replaceAll("[\\s().-]+", ""));
+    }
+
+    // The field name is part of the input, so equal values of different fields don't collide
+    private static String of(String field, String normalized) {
+        if (EncryptionConfig.blindIndexKey == null) {
+            return null;
+        }
+        Mac mac = MAC.get();
+        mac.update(field.getBytes(StandardCharsets.UTF_8));
+        mac.update((byte) 0);
+        return HexFormat.of().formatHex(mac.doFinal(normalized.getBytes(StandardCharsets.UTF_8)));
+    }
+}
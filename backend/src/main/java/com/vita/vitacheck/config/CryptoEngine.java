@@ -0,0 +1,132 @@
+package com.vita.vitacheck.config;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+// Shared by the attribute converters. New values are AES-GCM with a random IV and name the key
+// that sealed them:
+//
+//   "v" + key version + ":" + base64(iv | ciphertext | tag)
+//
+// Values without that header are AES/ECB base64 (':' is not in the base64 alphabet): the
+// original values and the deterministic ones. They always use the baseline key version, not
+// the current key, so a rotation neither makes them unreadable nor changes deterministic
+// ciphertext that is compared in SQL. Ciphers are cached per thread; on the
+// virtual threads of the analysis executor that means one lookup per job instead of one per
+// attribute.
+public final class CryptoEngine {
+
+    private static final String GCM = "AES/GCM/NoPadding";
+    private static final String ECB = "AES/ECB/PKCS5Padding";
+    private static final int IV_SIZE = 12;
+    private static final int TAG_BITS = 128;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private static final ThreadLocal<Cipher> GCM_CIPHER = ThreadLocal.withInitial(() -> newCipher(GCM));
+    private static final ThreadLocal<CachedCipher> ECB_ENCRYPT = ThreadLocal.withInitial(CachedCipher::new);
+    private static final ThreadLocal<CachedCipher> ECB_DECRYPT = ThreadLocal.withInitial(CachedCipher::new);
+
+    private CryptoEngine() {
+    }
+
+    public static boolean isReady() {
+        return EncryptionConfig.secretKey != null;
+    }
+
+    public static String encrypt(String plaintext) throws GeneralSecurityException {
+        return encrypt(plaintext.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String encrypt(byte[] plaintext) throws GeneralSecurityException {
+        byte[] iv = new byte[IV_SIZE];
+        RANDOM.nextBytes(iv);
+
+        Cipher cipher = GCM_CIPHER.get();
+        cipher.init(Cipher.ENCRYPT_MODE, EncryptionConfig.secretKey, new GCMParameterSpec(TAG_BITS, iv));
+        byte[] sealed = ByteBuffer.allocate(IV_SIZE + cipher.getOutputSize(plaintext.length))
+                .put(iv)
+                .put(cipher.doFinal(plaintext))
+                .array();
+
+        return "v" + EncryptionConfig.keyVersion + ":" + Base64.getEncoder().encodeToString(sealed);
+    }
+
+    public static String decryptToString(String value) throws GeneralSecurityException {
+        return new String(decrypt(value), StandardCharsets.UTF_8);
+    }
+
+    public static byte[] decrypt(String value) throws GeneralSecurityException {
+        int separator = value.indexOf(':');
+        if (separator < 0) {
+            return ECB_DECRYPT.get().forKey(Cipher.DECRYPT_MODE, baselineKey())
+                    .doFinal(Base64.getDecoder().decode(value));
+        }
+
+        SecretKeySpec key = EncryptionConfig.keysByVersion.get(keyVersion(value, separator));
+        if (key == null) {
+            throw new GeneralSecurityException("Unknown encryption key version in " + value.substring(0, separator));
+        }
+
+        byte[] sealed = Base64.getDecoder().decode(value.substring(separator + 1));
+        Cipher cipher = GCM_CIPHER.get();
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, sealed, 0, IV_SIZE));
+        return cipher.doFinal(sealed, IV_SIZE, sealed.length - IV_SIZE);
+    }
+
+    // Same plaintext, same output: only for columns that are still looked up by equality
+    public static String encryptDeterministic(String plaintext) throws GeneralSecurityException {
+        byte[] ciphertext = ECB_ENCRYPT.get().forKey(Cipher.ENCRYPT_MODE, baselineKey())
+                .doFinal(plaintext.getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().encodeToString(ciphertext);
+    }
+
+    private static SecretKeySpec baselineKey() throws GeneralSecurityException {
+        SecretKeySpec key = EncryptionConfig.keysByVersion.get(EncryptionConfig.baselineKeyVersion);
+        if (key == null) {
+            throw new GeneralSecurityException("Unknown baseline encryption key version "
+                    + EncryptionConfig.baselineKeyVersion);
+        }
+        return key;
+    }
+
+    private static int keyVersion(String value, int separator) throws GeneralSecurityException {
+        if (value.charAt(0) != 'v') {
+            throw new GeneralSecurityException("Malformed encrypted value");
+        }
+        try {
+            return Integer.parseInt(value, 1, separator, 10);
+        } catch (NumberFormatException e) {
+            throw new GeneralSecurityException("Malformed encrypted value", e);
+        }
+    }
+
+    private static Cipher newCipher(String transformation) {
+        try {
+            return Cipher.getInstance(transformation);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(transformation + " is not available", e);
+        }
+    }
+
+    // ECB needs no IV, so a cipher stays initialized across doFinal calls until the key changes
+    private static final class CachedCipher {
+
+        private final Cipher cipher = newCipher(ECB);
+        private Key key;
+
+        Cipher forKey(int mode, Key key) throws GeneralSecurityException {
+            if (this.key != key) {
+                cipher.init(mode, key);
+                this.key = key;
+            }
+            return cipher;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.vita.vitacheck.config;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+// Keeps the original deterministic AES/ECB output for columns whose ciphertext is still compared
+// by the database (AnalyteSeries.analyteKey's unique constraint). Searchable personal data uses
+// a BlindIndex column instead.
+@Converter
+public class DeterministicStringEncryptionConverter implements AttributeConverter<String, String> {
+
+    @Override
+    public String convertToDatabaseColumn(String data) {
+        if (data == null || !CryptoEngine.isReady()) return null;
+        try {
+            return CryptoEngine.encryptDeterministic(data);
+        } catch (Exception e) {
+            throw new RuntimeException("Eroare la criptarea textului", e);
+        }
+    }
+
+    @Override
+    public String convertToEntityAttribute(String dbData) {
+        if (dbData == null || !CryptoEngine.isReady()) return null;
+        try {
+            return CryptoEngine.decryptToString(dbData);
+        } catch (Exception e) {
+            // Handing the ciphertext on as if it were the value would show it to the user
+            throw new IllegalStateException("Eroare la decriptarea textului", e);
+        }
+    }
+}
@@ -2,17 +2,43 @@ package com.vita.vitacheck.config;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
 import jakarta.annotation.PostConstruct;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 @Configuration
 public class EncryptionConfig {
 
     public static SecretKeySpec secretKey;
+    public static int keyVersion = 1;
+    // Key of the values without a version header: the original AES/ECB ones and the deterministic
+    // ones. It stays fixed across rotations, so those keep decrypting and keep their ciphertext.
+    public static int baselineKeyVersion = 1;
+    // Every key that can still be found in the "v<version>:" header of a CryptoEngine value
+    public static final Map<Integer, SecretKeySpec> keysByVersion = new ConcurrentHashMap<>();
+    public static SecretKeySpec blindIndexKey;
 
     @Value("${app.encryption.key}")
     private String hexKey;
 
+    @Value("${app.encryption.key-version:1}")
+    private int hexKeyVersion;
+
+    @Value("${app.encryption.baseline-key-version:1}")
+    private int hexBaselineKeyVersion;
+
+    // "version:hex,version:hex" of retired keys, kept so older values stay readable
+    @Value("${app.encryption.previous-keys:}")
+    private String previousKeys;
+
+    // Stays the same across key rotations; when empty it is derived from the encryption key
+    @Value("${app.encryption.blind-index-key:}")
+    private String hexBlindIndexKey;
+
     @PostConstruct
     public void init() {
         if (hexKey == null || hexKey.trim().isEmpty()) {
@@ -21,18 +47,44 @@ public class EncryptionConfig {
         }
         
         try {
-            byte[] keyBytes = new byte[hexKey.length() / 2];
-            for (int i = 0; i < keyBytes.length; i++) {
-                int index = i * 2;
-                int j = Integer.parseInt(hexKey.substring(index, index + 2), 16);
-                keyBytes[i] = (byte) j;
+            for (String entry : previousKeys.split(",")) {
+                if (!entry.isBlank()) {
+                    String[] parts = entry.trim().split(":");
+                    keysByVersion.put(Integer.parseInt(parts[0]), parseKey(parts[1]));
+                }
             }
-            
-            secretKey = new SecretKeySpec(keyBytes, "AES");
+
+            secretKey = parseKey(hexKey);
+            keyVersion = hexKeyVersion;
+            keysByVersion.put(keyVersion, secretKey);
+            baselineKeyVersion = hexBaselineKeyVersion;
+            if (!keysByVersion.containsKey(baselineKeyVersion)) {
+                throw new IllegalStateException("Key version " + baselineKeyVersion
+                        + " (app.encryption.baseline-key-version) is missing from app.encryption.previous-keys");
+            }
+            blindIndexKey = hexBlindIndexKey.isBlank() ? deriveBlindIndexKey(secretKey) : parseKey(hexBlindIndexKey);
             System.out.println("✅ Cheia AES-256 HEX a fost incarcata si validata cu succes prin @Value!");
             
+        } catch (IllegalStateException e) {
+            throw e;
         } catch (Exception e) {
             throw new RuntimeException("Eroare fatala: Cheia oferita nu este un Hexadecimal valid pentru AES", e);
         }
     }
+
+    private static SecretKeySpec deriveBlindIndexKey(SecretKeySpec key) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(key.getEncoded(), "HmacSHA256"));
+        return new SecretKeySpec(mac.doFinal("vitacheck-blind-index".getBytes(StandardCharsets.UTF_8)), "HmacSHA256");
+    }
+
+    private static SecretKeySpec parseKey(String hex) {
+        byte[] keyBytes = new byte[hex.length() / 2];
+        for (int i = 0; i < keyBytes.length; i++) {
+            int index = i * 2;
+            int j = Integer.parseInt(hex.substring(index, index + 2), 16);
+            keyBytes[i] = (byte) j;
+        }
+        return new SecretKeySpec(keyBytes, "AES");
+    }
 }
\ No newline at end of file
@@ -1,6 +1,8 @@
 package com.vita.vitacheck.config;
 
 import com.vita.vitacheck.service.JwtService;
+import com.vita.vitacheck.service.PrincipalCache;
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -12,6 +14,7 @@ import org.springframework.security.authentication.UsernamePasswordAuthenticatio
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
@@ -24,6 +27,7 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final JwtService jwtService;
     private final UserDetailsService userDetailsService;
+    private final PrincipalCache principalCache;
 
     @Override
     protected void doFilterInternal(
@@ -32,7 +36,6 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             @NonNull FilterChain filterChain) throws ServletException, IOException {
 
         String jwt = null;
-        final String userEmail;
 
         // 1. Încercăm să citim din Cookie
         if (request.getCookies() != null) {
@@ -58,30 +61,34 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             filterChain.doFilter(request, response);
             return;
         }
-        userEmail = jwtService.extractUsername(jwt); // Extract email from token
+        // Signature and expiry are checked once here; an invalid token leaves the request anonymous
+        Claims claims = jwtService.parseVerifiedClaims(jwt);
+        final String userEmail = claims != null ? claims.getSubject() : null;
 
         // 3. Check if user is not already authenticated
         if (userEmail != null && SecurityContextHolder.getContext().getAuthentication() == null) {
 
-            // Load user details from the database
-            UserDetails userDetails = this.userDetailsService.loadUserByUsername(userEmail);
-
-            // 4. Validate the token
-            if (jwtService.isTokenValid(jwt, userDetails)) {
+            // Load user details, from the database only when they aren't cached
+            UserDetails userDetails;
+            try {
+                userDetails = principalCache.get(userEmail, userDetailsService::loadUserByUsername);
+            } catch (UsernameNotFoundException e) {
+                filterChain.doFilter(request, response);
+                return;
+            }
 
-                // Create an authentication token
-                UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
-                        userDetails,
-                        null,
-                        userDetails.getAuthorities());
+            // 4. Create an authentication token
+            UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
+                    userDetails,
+                    null,
+                    userDetails.getAuthorities());
 
-                // Add request details (IP, Session ID, etc.)
-                authToken.setDetails(
-                        new WebAuthenticationDetailsSource().buildDetails(request));
+            // Add request details (IP, Session ID, etc.)
+            authToken.setDetails(
+                    new WebAuthenticationDetailsSource().buildDetails(request));
 
-                // 5. Update the Security Context (Log the user in)
-                SecurityContextHolder.getContext().setAuthentication(authToken);
-            }
+            // 5. Update the Security Context (Log the user in)
+            SecurityContextHolder.getContext().setAuthentication(authToken);
         }
 
         // 6. Continue the filter chain
@@ -0,0 +1,47 @@
+package com.vita.vitacheck.config;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.vita.vitacheck.model.AnalyteMeasurement;
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+import java.util.ArrayList;
+import java.util.List;
+
+@Converter
+public class MeasurementsEncryptionConverter implements AttributeConverter<List<AnalyteMeasurement>, String> {
+
+    private static final TypeReference<List<AnalyteMeasurement>> TYPE = new TypeReference<>() {};
+    private static final ObjectMapper mapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    private static final ObjectReader reader = mapper.readerFor(TYPE);
+    private static final ObjectWriter writer = mapper.writerFor(TYPE);
+
+    @Override
+    public String convertToDatabaseColumn(List<AnalyteMeasurement> data) {
+        if (data == null || !CryptoEngine.isReady()) return null;
+        try {
+            return CryptoEngine.encrypt(writer.writeValueAsBytes(data));
+        } catch (Exception e) {
+            throw new RuntimeException("Eroare la criptarea seriei de masuratori", e);
+        }
+    }
+
+    // Always a mutable list: the series code edits it in place. A row that can't be read fails the
+    // load, an empty list here would let the next save overwrite the stored measurements.
+    @Override
+    public List<AnalyteMeasurement> convertToEntityAttribute(String dbData) {
+        if (!CryptoEngine.isReady()) return null;
+        if (dbData == null) return new ArrayList<>();
+        try {
+            return new ArrayList<>(reader.<List<AnalyteMeasurement>>readValue(CryptoEngine.decrypt(dbData)));
+        } catch (Exception e) {
+            throw new IllegalStateException("Eroare la decriptarea seriei de masuratori", e);
+        }
+    }
+}
@@ -1,13 +1,81 @@
 package com.vita.vitacheck.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
+import java.time.Duration;
+
+// Every downstream gets its own connection pool and timeouts, so a hung Gemini socket
+// can neither pin a thread forever nor starve the password reset emails.
 @Configuration
 public class RestTemplateConfig {
+
+    @Bean
+    public RestTemplate geminiRestTemplate(RestTemplateBuilder builder, MeterRegistry meterRegistry,
+            @Value("${app.http-clients.gemini.connect-timeout:5s}") Duration connectTimeout,
+            @Value("${app.http-clients.gemini.read-timeout:120s}") Duration readTimeout,
+            @Value("${app.http-clients.gemini.pool-acquire-timeout:10s}") Duration poolAcquireTimeout,
+            @Value("${app.http-clients.gemini.keep-alive:30s}") Duration keepAlive,
+            @Value("${app.http-clients.gemini.max-connections:20}") int maxConnections) {
+        return build(builder, meterRegistry, "gemini", connectTimeout, readTimeout, poolAcquireTimeout, keepAlive,
+                maxConnections);
+    }
+
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public RestTemplate resendRestTemplate(RestTemplateBuilder builder, MeterRegistry meterRegistry,
+            @Value("${app.http-clients.resend.connect-timeout:3s}") Duration connectTimeout,
+            @Value("${app.http-clients.resend.read-timeout:10s}") Duration readTimeout,
+            @Value("${app.http-clients.resend.pool-acquire-timeout:5s}") Duration poolAcquireTimeout,
+            @Value("${app.http-clients.resend.keep-alive:30s}") Duration keepAlive,
+            @Value("${app.http-clients.resend.max-connections:5}") int maxConnections) {
+        return build(builder, meterRegistry, "resend", connectTimeout, readTimeout, poolAcquireTimeout, keepAlive,
+                maxConnections);
+    }
+
+    private RestTemplate build(RestTemplateBuilder builder, MeterRegistry meterRegistry, String name,
+            Duration connectTimeout, Duration readTimeout, Duration poolAcquireTimeout, Duration keepAlive,
+            int maxConnections) {
+
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnections)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.of(connectTimeout))
+                        .setSocketTimeout(Timeout.of(readTimeout))
+                        .setTimeToLive(TimeValue.of(keepAlive))
+                        .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+                        .build())
+                .build();
+
+        // Exposes leased/available/pending connections as httpcomponents.httpclient.pool.* with tag httpclient=<name>
+        new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, name).bindTo(meterRegistry);
+
+        CloseableHttpClient httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.of(poolAcquireTimeout))
+                        .setResponseTimeout(Timeout.of(readTimeout))
+                        .build())
+                .evictIdleConnections(TimeValue.of(keepAlive))
+                .evictExpiredConnections()
+                .build();
+
+        return builder
+                .requestFactory(() -> new HttpComponentsClientHttpRequestFactory(httpClient))
+                .build();
     }
-}
\ No newline at end of file
+}
@@ -1,6 +1,8 @@
 package com.vita.vitacheck.config;
 
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationProvider;
@@ -19,6 +21,14 @@ public class SecurityConfig {
     private final JwtAuthenticationFilter jwtAuthFilter;
     private final AuthenticationProvider authenticationProvider;
 
+    // Actuator is served on its own port, bound to an internal address; any user of the API port
+    // could otherwise read the metrics
+    @Value("${server.port:8080}")
+    private int serverPort;
+
+    @Value("${management.server.port:-1}")
+    private int managementPort;
+
     @Bean
     public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
         http
@@ -27,6 +37,8 @@ public class SecurityConfig {
             .authorizeHttpRequests(auth -> auth
                 .requestMatchers("/api/auth/**").permitAll() 
                 .requestMatchers("/api/**").authenticated()  
+                .requestMatchers(this::onManagementPort).permitAll()
+                .requestMatchers("/actuator/**").denyAll()
                 .anyRequest().authenticated()
             )
             .sessionManagement(session -> session
@@ -37,4 +49,8 @@ public class SecurityConfig {
 
         return http.build();
     }
+
+    private boolean onManagementPort(HttpServletRequest request) {
+        return managementPort > 0 && managementPort != serverPort && request.getLocalPort() == managementPort;
+    }
 }
\ No newline at end of file
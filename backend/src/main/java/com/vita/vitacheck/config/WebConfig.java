@@ -17,6 +17,7 @@ public class WebConfig {
                         .allowedOrigins("https://vitacheck.online", "https://www.vitacheck.online", "http://localhost:3000") // Allow your frontend URL
                         .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS")
                         .allowedHeaders("*")
+                        .exposedHeaders("X-Next-Cursor")
                         .allowCredentials(true);
             }
         };
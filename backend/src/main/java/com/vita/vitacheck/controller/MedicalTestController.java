@@ -1,22 +1,34 @@
 package com.vita.vitacheck.controller;
 
+import com.vita.vitacheck.dto.AnalysisJobResponse;
+import com.vita.vitacheck.dto.AnalyticsQuery;
+import com.vita.vitacheck.dto.BatchUploadResult;
 import com.vita.vitacheck.dto.MedicalItemsProcessingResponse;
 import com.vita.vitacheck.dto.MedicalTestItemResponse;
+import com.vita.vitacheck.dto.MedicalTestPage;
 import com.vita.vitacheck.dto.MedicalTestResponse;
 import com.vita.vitacheck.model.MedicalTest;
 import com.vita.vitacheck.model.User;
+import com.vita.vitacheck.service.AnalysisJobService;
+import com.vita.vitacheck.service.BatchUploadService;
 import com.vita.vitacheck.service.MedicalExtractionService;
 import com.vita.vitacheck.service.MedicalItemsProcessing;
 import com.vita.vitacheck.service.MedicalTestService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.LocalDate;
 import java.util.List;
 
 @RestController
@@ -24,9 +36,19 @@ import java.util.List;
 @RequiredArgsConstructor
 public class MedicalTestController {
 
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int MAX_POINTS = 1000;
+    private static final int MAX_STATUS_IDS = 200;
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    // Browsers keep the response but ask before reusing it; without an explicit header Spring
+    // Security sends no-store and If-None-Match never comes back
+    private static final CacheControl REVALIDATE = CacheControl.noCache().cachePrivate();
+
     private final MedicalTestService medicalTestService;
     private final MedicalExtractionService medicalExtractionService;
     private final MedicalItemsProcessing medicalItemsProcessing;
+    private final AnalysisJobService analysisJobService;
+    private final BatchUploadService batchUploadService;
 
     // Upload a new test
     @PostMapping("/upload")
@@ -35,17 +57,96 @@ public class MedicalTestController {
         try {
             MedicalTestResponse response = medicalTestService.storeTest(file, user);
             return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (MaxUploadSizeExceededException e) {
+            throw e;
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
 
+    // Upload many PDFs and/or ZIP archives of PDFs at once (repeat files=...). Every stored
+    // document is queued for analysis; the response has one entry per document.
+    @PostMapping("/upload/batch")
+    public ResponseEntity<List<BatchUploadResult>> uploadBatch(@AuthenticationPrincipal User user,
+            @RequestParam("files") List<MultipartFile> files) {
+        if (files.isEmpty()) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(batchUploadService.upload(files, user));
+    }
+
+    // Chart data, optionally narrowed to some analytes (repeat analyte=<id or name>) and a
+    // collection date range (ISO dates, inclusive). aggregate=month returns monthly mean/min/max
+    // and maxPoints downsamples each series; out-of-range results are always kept.
+    // The ETag follows the user's data version, so a revalidation costs one counter lookup.
     @GetMapping("/analytics")
-    public ResponseEntity<List<MedicalItemsProcessingResponse>> getPlotData (@AuthenticationPrincipal User user)
+    public ResponseEntity<List<MedicalItemsProcessingResponse>> getPlotData (@AuthenticationPrincipal User user,
+            @RequestParam(name = "analyte", required = false) List<String> analytes,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) Integer maxPoints,
+            @RequestParam(required = false) String aggregate,
+            @RequestHeader HttpHeaders requestHeaders)
     {
+        if (!isValidMaxPoints(maxPoints) || !isValidAggregation(aggregate)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        String eTag = analyticsETag(user);
+        if (matchesETag(requestHeaders.getIfNoneMatch(), eTag)) {
+            return notModified(eTag);
+        }
+
         try{
-            List<MedicalItemsProcessingResponse> response = medicalItemsProcessing.processTestItems(user);
-            return ResponseEntity.ok(response);
+            AnalyticsQuery query = AnalyticsQuery.builder()
+                    .analytes(analytes)
+                    .from(from)
+                    .to(to)
+                    .maxPoints(maxPoints)
+                    .aggregation(aggregation(aggregate))
+                    .build();
+            List<MedicalItemsProcessingResponse> response = medicalItemsProcessing.processTestItems(user, query);
+            return ResponseEntity.ok().eTag(eTag).cacheControl(REVALIDATE).body(response);
+        }
+        catch (RuntimeException e)
+        {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    // A single series, by analyte id or name
+    @GetMapping("/analytics/{analyte}")
+    public ResponseEntity<MedicalItemsProcessingResponse> getAnalyteSeries(@AuthenticationPrincipal User user,
+            @PathVariable String analyte,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) Integer maxPoints,
+            @RequestParam(required = false) String aggregate,
+            @RequestHeader HttpHeaders requestHeaders)
+    {
+        if (!isValidMaxPoints(maxPoints) || !isValidAggregation(aggregate)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        String eTag = analyticsETag(user);
+        if (matchesETag(requestHeaders.getIfNoneMatch(), eTag)) {
+            return notModified(eTag);
+        }
+
+        try{
+            AnalyticsQuery query = AnalyticsQuery.builder()
+                    .analytes(List.of(analyte))
+                    .from(from)
+                    .to(to)
+                    .maxPoints(maxPoints)
+                    .aggregation(aggregation(aggregate))
+                    .build();
+            List<MedicalItemsProcessingResponse> response = medicalItemsProcessing.processTestItems(user, query);
+            return response.isEmpty()
+                    ? ResponseEntity.notFound().build()
+                    : ResponseEntity.ok().eTag(eTag).cacheControl(REVALIDATE).body(response.get(0));
         }
         catch (RuntimeException e)
         {
@@ -53,21 +154,78 @@ public class MedicalTestController {
         }
     }
 
-    // Get list of all tests for the user
+    // Get list of tests for the user, newest first. With a limit the next page is requested
+    // by passing the X-Next-Cursor header of the previous response as cursor.
     @GetMapping
-    public ResponseEntity<List<MedicalTestResponse>> getUserTests(@AuthenticationPrincipal User user) {
-        return ResponseEntity.ok(medicalTestService.getUserTests(user));
+    public ResponseEntity<List<MedicalTestResponse>> getUserTests(@AuthenticationPrincipal User user,
+            @RequestParam(required = false) Integer limit, @RequestParam(required = false) String cursor) {
+        if (limit != null && (limit < 1 || limit > MAX_PAGE_SIZE)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        try {
+            MedicalTestPage page = medicalTestService.getUserTests(user, limit, cursor);
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if (page.getNextCursor() != null) {
+                response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+            }
+            return response.body(page.getItems());
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().build();
+        }
     }
 
-    // Download/View a specific test
+    // Download/View a specific test. Supports a single byte range (PDF viewers fetch pages
+    // lazily) and conditional requests on the content hash ETag.
     @GetMapping("/{id}/download")
-    public ResponseEntity<byte[]> downloadTest(@AuthenticationPrincipal User user, @PathVariable Long id) {
+    public ResponseEntity<StreamingResponseBody> downloadTest(@AuthenticationPrincipal User user, @PathVariable Long id,
+            @RequestHeader HttpHeaders requestHeaders) {
         MedicalTest test = medicalTestService.getTestFile(id, user);
+        String eTag = test.getContentHash() != null ? "\"" + test.getContentHash() + "\"" : null;
+
+        if (eTag != null && matchesETag(requestHeaders.getIfNoneMatch(), eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + test.getFileName() + "\"");
+        headers.setContentType(MediaType.parseMediaType(test.getFileType()));
+        if (eTag != null) {
+            headers.setETag(eTag);
+        }
+
+        Long length = test.getContentLength();
+        if (length == null) {
+            return ResponseEntity.ok().headers(headers).body(out -> medicalTestService.writeTestFile(test, out));
+        }
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        // A Range under a stale If-Range is ignored and the whole file is sent
+        String ifRange = requestHeaders.getFirst(HttpHeaders.IF_RANGE);
+        String rangeHeader = requestHeaders.getFirst(HttpHeaders.RANGE);
+        if (rangeHeader != null && (ifRange == null || ifRange.equals(eTag))) {
+            try {
+                List<HttpRange> ranges = HttpRange.parseRanges(rangeHeader);
+                if (ranges.size() == 1) {
+                    long start = ranges.get(0).getRangeStart(length);
+                    long end = ranges.get(0).getRangeEnd(length);
+                    return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                            .headers(headers)
+                            .header(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length)
+                            .contentLength(end - start + 1)
+                            .body(out -> medicalTestService.writeTestFile(test, out, start, end - start + 1));
+                }
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                        .header(HttpHeaders.CONTENT_RANGE, "bytes */" + length)
+                        .build();
+            }
+        }
 
         return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + test.getFileName() + "\"")
-                .contentType(MediaType.parseMediaType(test.getFileType()))
-                .body(test.getData());
+                .headers(headers)
+                .contentLength(length)
+                .body(out -> medicalTestService.writeTestFile(test, out));
     }
 
     // Rename a specific test
@@ -96,35 +254,115 @@ public class MedicalTestController {
         }
     }
 
-    // Analyze test
+    // Analyze test (queued, the result is polled through analysis-status)
     @PostMapping("/{id}/analyze")
-    public ResponseEntity<String> analyzeTest(@AuthenticationPrincipal User user, @PathVariable Long id)
+    public ResponseEntity<AnalysisJobResponse> analyzeTest(@AuthenticationPrincipal User user, @PathVariable Long id)
     {
         try{
             MedicalTest test = medicalTestService.getTestFile(id, user);
-            byte[] fileBytes = test.getData();
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(analysisJobService.enqueue(test));
+        }
+        catch (AnalysisJobService.QueueFullException e)
+        {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfter().toSeconds()))
+                    .body(AnalysisJobResponse.builder()
+                            .medicalTestId(id)
+                            .errorMessage(e.getMessage())
+                            .build());
+        }
+        catch (RuntimeException e)
+        {
+            return ResponseEntity.badRequest().body(AnalysisJobResponse.builder()
+                    .medicalTestId(id)
+                    .errorMessage(e.getMessage())
+                    .build());
+        }
+    }
 
-            medicalTestService.analyzeTest(test, fileBytes);
-            return ResponseEntity.ok("Test analyzed successfully");
+    // Status of the latest analysis job of a test
+    @GetMapping("/{id}/analysis-status")
+    public ResponseEntity<AnalysisJobResponse> getAnalysisStatus(@AuthenticationPrincipal User user, @PathVariable Long id)
+    {
+        try{
+            medicalTestService.getTestFile(id, user);
+            return ResponseEntity.ok(analysisJobService.getLatestJob(id));
         }
         catch (RuntimeException e)
         {
-            return ResponseEntity.badRequest().body(e.getMessage());
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    // Latest analysis job of several tests (repeat ids=...), to follow a batch upload.
+    // Ids of other users' tests are left out.
+    @GetMapping("/analysis-status")
+    public ResponseEntity<List<AnalysisJobResponse>> getAnalysisStatuses(@AuthenticationPrincipal User user,
+            @RequestParam List<Long> ids)
+    {
+        if (ids.isEmpty() || ids.size() > MAX_STATUS_IDS) {
+            return ResponseEntity.badRequest().build();
         }
+        List<Long> owned = medicalTestService.getOwnedTestIds(ids, user);
+        return ResponseEntity.ok(owned.isEmpty() ? List.of() : analysisJobService.getLatestJobs(owned));
     }
 
-    // Get test data
+    // Get test data. A matching ETag is answered before the test is loaded; the 304 carries
+    // nothing, so it doesn't matter that ownership isn't checked for it.
     @GetMapping("/{id}/test-data")
-    public ResponseEntity<MedicalTestItemResponse> getAnalyzedData(@AuthenticationPrincipal User user, @PathVariable Long id)
+    public ResponseEntity<MedicalTestItemResponse> getAnalyzedData(@AuthenticationPrincipal User user, @PathVariable Long id,
+            @RequestHeader HttpHeaders requestHeaders)
     {
         try
         {
+            String eTag = "W/\"" + medicalTestService.getDataVersion(user) + "-" + id + "\"";
+            if (matchesETag(requestHeaders.getIfNoneMatch(), eTag)) {
+                return notModified(eTag);
+            }
+
             MedicalTest test = medicalTestService.getTestFile(id, user);
-            return ResponseEntity.ok(medicalExtractionService.getTestData(test));
+            return ResponseEntity.ok().eTag(eTag).cacheControl(REVALIDATE).body(medicalExtractionService.getTestData(test));
         }
         catch (Exception e)
         {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
-}
\ No newline at end of file
+
+    // LTTB keeps the first and last point, so fewer than three leaves nothing to choose
+    private static boolean isValidMaxPoints(Integer maxPoints) {
+        return maxPoints == null || (maxPoints >= 3 && maxPoints <= MAX_POINTS);
+    }
+
+    private static boolean isValidAggregation(String aggregate) {
+        return aggregate == null || "month".equalsIgnoreCase(aggregate);
+    }
+
+    private static AnalyticsQuery.Aggregation aggregation(String aggregate) {
+        return aggregate != null ? AnalyticsQuery.Aggregation.MONTH : null;
+    }
+
+    // Data version plus the series format, which changes the charts without touching the data
+    private String analyticsETag(User user) {
+        return "W/\"" + medicalTestService.getDataVersion(user) + "-"
+                + Integer.toHexString(medicalItemsProcessing.seriesVersion()) + "\"";
+    }
+
+    private static <T> ResponseEntity<T> notModified(String eTag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).cacheControl(REVALIDATE).build();
+    }
+
+    // Weak comparison, as If-None-Match asks for
+    private static boolean matchesETag(List<String> candidates, String eTag) {
+        for (String candidate : candidates) {
+            if ("*".equals(candidate) || opaqueTag(eTag).equals(opaqueTag(candidate))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String opaqueTag(String eTag) {
+        return eTag.startsWith("W/") ? eTag.substring(2) : eTag;
+    }
+}
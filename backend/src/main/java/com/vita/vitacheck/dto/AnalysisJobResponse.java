@@ -0,0 +1,20 @@
+package com.vita.vitacheck.dto;
+
+import java.time.LocalDateTime;
+
+import com.vita.vitacheck.model.AnalysisJobStatus;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class AnalysisJobResponse {
+    private Long jobId;
+    private Long medicalTestId;
+    private AnalysisJobStatus status;
+    private String errorMessage;
+    private LocalDateTime createdAt;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+}
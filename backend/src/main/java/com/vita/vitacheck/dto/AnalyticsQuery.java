@@ -0,0 +1,27 @@
+package com.vita.vitacheck.dto;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import lombok.Builder;
+import lombok.Data;
+
+// Filters of the analytics endpoints; every field is optional
+@Data
+@Builder
+public class AnalyticsQuery {
+    // Canonical analyte ids or names, as in MedicalItemsProcessingResponse.analyte_id / test_name
+    private List<String> analytes;
+    // Inclusive collection date range
+    private LocalDate from;
+    private LocalDate to;
+    // Per series, downsampled with LTTB; out-of-range points are kept even past the limit
+    private Integer maxPoints;
+    // Null returns the measurements themselves
+    private Aggregation aggregation;
+
+    public enum Aggregation {
+        // Mean, min and max per calendar month
+        MONTH
+    }
+}
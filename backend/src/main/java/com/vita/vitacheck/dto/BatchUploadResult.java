@@ -0,0 +1,27 @@
+package com.vita.vitacheck.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+// Outcome of one document of a batch upload. Analysis progress of queued documents is followed
+// through GET /api/tests/analysis-status?ids=...
+@Data
+@Builder
+public class BatchUploadResult {
+    private String fileName;
+    // The ZIP archive the document came from, null for loose files
+    private String archive;
+    private Status status;
+    private Long medicalTestId;
+    private AnalysisJobResponse job;
+    // For duplicates, the document of this batch with the same content
+    private String duplicateOf;
+    private String errorMessage;
+
+    public enum Status {
+        QUEUED,
+        DUPLICATE,
+        REJECTED,
+        FAILED
+    }
+}
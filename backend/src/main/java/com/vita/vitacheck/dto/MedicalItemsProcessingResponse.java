@@ -7,6 +7,8 @@ import com.vita.vitacheck.model.MedicalTestItemLimits;
 
 @Data
 public class MedicalItemsProcessingResponse {
+    // Null for analytes outside the dictionary, which are identified by test_name
+    private Integer analyte_id;
     private String test_name;
     private String um;
     private Double min_reference;
@@ -20,5 +22,9 @@ public class MedicalItemsProcessingResponse {
         private Double numeric_value;
         private Long medical_test_id;
         private String file_name;
+        // Only on aggregated points, which stand for count measurements and have no test id
+        private Double min_value;
+        private Double max_value;
+        private Integer count;
     }
 }
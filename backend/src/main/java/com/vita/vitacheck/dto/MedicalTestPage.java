@@ -0,0 +1,14 @@
+package com.vita.vitacheck.dto;
+
+import java.util.List;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class MedicalTestPage {
+    private List<MedicalTestResponse> items;
+    // Null on the last page
+    private String nextCursor;
+}
@@ -0,0 +1,11 @@
+package com.vita.vitacheck.dto;
+
+import java.time.LocalDateTime;
+
+// Listing projection of MedicalTest: never selects the PDF bytes or the items
+public interface MedicalTestSummary {
+    Long getId();
+    String getFileName();
+    String getFileType();
+    LocalDateTime getUploadDate();
+}
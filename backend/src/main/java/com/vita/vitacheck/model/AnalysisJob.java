@@ -0,0 +1,41 @@
+package com.vita.vitacheck.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "analysis_jobs", indexes = @Index(name = "idx_analysis_jobs_test", columnList = "medical_test_id"))
+public class AnalysisJob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "medical_test_id", nullable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private MedicalTest medicalTest;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private AnalysisJobStatus status;
+
+    @Column(columnDefinition = "TEXT")
+    private String errorMessage;
+
+    private LocalDateTime createdAt;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+}
@@ -0,0 +1,8 @@
+package com.vita.vitacheck.model;
+
+public enum AnalysisJobStatus {
+    QUEUED,
+    RUNNING,
+    DONE,
+    FAILED
+}
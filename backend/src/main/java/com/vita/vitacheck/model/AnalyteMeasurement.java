@@ -0,0 +1,21 @@
+package com.vita.vitacheck.model;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+// One point of an AnalyteSeries. It keeps the reference range of its own bulletin, so the
+// series header can be recomputed after a bulletin is removed without reloading any items.
+public record AnalyteMeasurement(
+    Long medicalTestId,
+    String fileName,
+    String collectionDate,
+    // Sort key: the bulletin's collection date, or its upload day when it has none
+    LocalDate collectedOn,
+    LocalDateTime uploadDate,
+    Double numericValue,
+    String unit,
+    Double minReference,
+    Double maxReference,
+    List<MedicalTestItemLimits> limits
+) {}
@@ -0,0 +1,66 @@
+package com.vita.vitacheck.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import com.vita.vitacheck.config.DeterministicStringEncryptionConverter;
+import com.vita.vitacheck.config.LimitsEncryptionConverter;
+import com.vita.vitacheck.config.MeasurementsEncryptionConverter;
+import com.vita.vitacheck.config.StringEncryptionConverter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Materialized chart data: one row per user and normalized analyte, with the measurements
+// already sorted by collection date. Kept up to date by MedicalItemsProcessing.
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "analyte_series", uniqueConstraints = @UniqueConstraint(columnNames = { "user_id", "analyteKey" }),
+        indexes = @Index(name = "idx_analyte_series_user_analyte_id", columnList = "user_id, analyteId"))
+public class AnalyteSeries {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private User user;
+
+    @Column(columnDefinition = "TEXT", nullable = false)
+    @Convert(converter = DeterministicStringEncryptionConverter.class)
+    private String analyteKey;
+
+    // Canonical analyte of the series; null for names outside the dictionary, keyed by name only
+    private Integer analyteId;
+
+    @Column(columnDefinition = "TEXT")
+    @Convert(converter = StringEncryptionConverter.class)
+    private String testName;
+
+    @Column(columnDefinition = "TEXT")
+    @Convert(converter = StringEncryptionConverter.class)
+    private String unit;
+
+    private Double minReference;
+    private Double maxReference;
+
+    @Column(columnDefinition = "TEXT")
+    @Convert(converter = LimitsEncryptionConverter.class)
+    private List<MedicalTestItemLimits> limits;
+
+    @Builder.Default
+    @Column(columnDefinition = "TEXT")
+    @Convert(converter = MeasurementsEncryptionConverter.class)
+    private List<AnalyteMeasurement> measurements = new ArrayList<>();
+}
@@ -0,0 +1,38 @@
+package com.vita.vitacheck.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import com.vita.vitacheck.config.StringEncryptionConverter;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "extraction_cache", uniqueConstraints = @UniqueConstraint(columnNames = { "contentHash",
+        "promptVersion" }))
+public class ExtractionCacheEntry {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // SHA-256 of the PDF bytes, hex encoded
+    @Column(nullable = false, length = 64)
+    private String contentHash;
+
+    @Column(nullable = false)
+    private Integer promptVersion;
+
+    @Column(columnDefinition = "TEXT", nullable = false)
+    @Convert(converter = StringEncryptionConverter.class)
+    private String extractionJson;
+
+    private LocalDateTime createdAt;
+}
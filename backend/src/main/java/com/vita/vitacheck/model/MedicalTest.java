@@ -7,8 +7,8 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import com.vita.vitacheck.config.StringEncryptionConverter;
-import com.vita.vitacheck.config.ByteArrayEncryptionConverter;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
@@ -18,7 +18,10 @@ import java.util.List;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "medical_tests")
+@Table(name = "medical_tests", indexes = {
+        @Index(name = "idx_medical_tests_user_upload", columnList = "user_id, uploadDate, id"),
+        @Index(name = "idx_medical_tests_user_collection", columnList = "user_id, collectionDate")
+})
 public class MedicalTest {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -34,12 +37,16 @@ public class MedicalTest {
     private String fileType;
     private LocalDateTime uploadDate;
 
-    @Column(columnDefinition = "bytea")
-    @Convert(converter = ByteArrayEncryptionConverter.class)
-    private byte[] data;
+    // Encrypted PDF in the BlobStore, see DocumentStorageService
+    private String blobRef;
+    private Long contentLength;
+    // SHA-256 of the plaintext PDF, hex
+    private String contentHash;
 
     private String laboratoryName;
     private String testDate;
+    // testDate as read by CollectionDateParser; null when the bulletin has no readable date
+    private LocalDate collectionDate;
 
     @Builder.Default
     @OneToMany(mappedBy = "medicalTest", cascade = CascadeType.ALL, orphanRemoval = true)
@@ -16,8 +16,11 @@ import lombok.Data;
 @Table(name = "medical_test_items")
 public class MedicalTestItem {
     
+    // A pooled sequence rather than IDENTITY, which keeps Hibernate from batching the inserts of
+    // a bulletin's items. See ItemIdSequenceMigration for tables that started with IDENTITY.
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "medical_test_items_seq")
+    @SequenceGenerator(name = "medical_test_items_seq", sequenceName = "medical_test_items_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -28,6 +31,9 @@ public class MedicalTestItem {
     @Convert(converter = StringEncryptionConverter.class)
     private String testName;
 
+    // AnalyteIndex id of testName, null when the dictionary did not know the name at extraction
+    private Integer analyteId;
+
     private Double numericValue;
 
     @Column(columnDefinition = "TEXT")
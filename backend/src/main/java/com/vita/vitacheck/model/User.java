@@ -10,6 +10,7 @@ import lombok.NoArgsConstructor;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 
+import com.vita.vitacheck.config.BlindIndex;
 import com.vita.vitacheck.config.StringEncryptionConverter;
 
 import java.util.ArrayList;
@@ -36,14 +37,21 @@ public class User implements UserDetails {
     private String password;
 
     
-    @Column(columnDefinition = "TEXT", nullable = false, unique = true)
+    @Column(columnDefinition = "TEXT", nullable = false)
     @Convert(converter = StringEncryptionConverter.class)
     private String cnp;
 
-    @Column(columnDefinition = "TEXT", nullable = false, unique = true)
+    @Column(columnDefinition = "TEXT", nullable = false)
     @Convert(converter = StringEncryptionConverter.class)
     private String phoneNumber;
 
+    // BlindIndex values of cnp and phoneNumber; uniqueness and lookups go through these
+    @Column(length = 64, unique = true)
+    private String cnpIndex;
+
+    @Column(length = 64, unique = true)
+    private String phoneNumberIndex;
+
     private String firstName;
     private String lastName;
     private boolean isMale;
@@ -54,6 +62,14 @@ public class User implements UserDetails {
 
     private Integer age;
 
+    // Format of the stored analytics series; null or outdated series are rebuilt on first use
+    private Integer seriesVersion;
+
+    // Bumped with every change to the user's tests, the ETag of analytics and test data. Only
+    // written by UserRepository.incrementDataVersion, so a stale principal can't roll it back.
+    @Column(insertable = false, updatable = false)
+    private Long dataVersion;
+
     @Builder.Default
     @OneToMany(mappedBy = "user", cascade = CascadeType.ALL, orphanRemoval = true)
     private List<MedicalTest> medicalTests = new ArrayList<>();
@@ -68,6 +84,13 @@ public class User implements UserDetails {
         test.setUser(null);
     }
 
+    @PrePersist
+    @PreUpdate
+    private void updateBlindIndexes() {
+        cnpIndex = BlindIndex.cnp(cnp);
+        phoneNumberIndex = BlindIndex.phoneNumber(phoneNumber);
+    }
+
     @Override
     public Collection<? extends GrantedAuthority> getAuthorities() {
         return List.of();
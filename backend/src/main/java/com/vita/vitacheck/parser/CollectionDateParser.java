@@ -0,0 +1,76 @@
+package com.vita.vitacheck.parser;
+
+import java.text.Normalizer;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Reads the collection dates the extractors hand back. Gemini is asked for DD-MM-YYYY but also
+// returns ISO dates, date-times, dotted or slashed dates, two digit years and month names.
+public final class CollectionDateParser {
+
+    // Year first, with any of the separators; the digit anchors keep "2024/03/12" from being read
+    // as day 24 of 03/12
+    private static final Pattern ISO = Pattern.compile("(?<!\\d)(\\d{4})\\s*([./-])\\s*(\\d{1,2})\\s*\\2\\s*(\\d{1,2})(?!\\d)");
+    private static final Pattern NUMERIC = Pattern.compile("(?<!\\d)(\\d{1,2})\\s*[./-]\\s*(\\d{1,2})\\s*[./-]\\s*(\\d{4}|\\d{2})(?!\\d)");
+    private static final Pattern NAMED = Pattern.compile("(?<!\\d)(\\d{1,2})\\s*[./ -]?\\s*([a-z]{3,})\\.?\\s*[./ -]?\\s*(\\d{4})");
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+
+    // Romanian and English, matched on the first three letters
+    private static final Map<String, Integer> MONTHS = Map.ofEntries(
+            Map.entry("ian", 1), Map.entry("jan", 1), Map.entry("feb", 2), Map.entry("mar", 3),
+            Map.entry("apr", 4), Map.entry("mai", 5), Map.entry("may", 5), Map.entry("iun", 6),
+            Map.entry("jun", 6), Map.entry("iul", 7), Map.entry("jul", 7), Map.entry("aug", 8),
+            Map.entry("sep", 9), Map.entry("oct", 10), Map.entry("noi", 11), Map.entry("nov", 11),
+            Map.entry("dec", 12));
+
+    private CollectionDateParser() {
+    }
+
+    // Null when the text holds no valid date
+    public static LocalDate parse(String text) {
+        return parse(text, LocalDate.now());
+    }
+
+    // today places two digit years: "03.04.98" is 1998, a collection date can't be years ahead
+    public static LocalDate parse(String text, LocalDate today) {
+        if (text == null || text.isBlank()) {
+            return null;
+        }
+        String folded = DIACRITICS.matcher(Normalizer.normalize(text, Normalizer.Form.NFKD))
+                .replaceAll("")
+                .toLowerCase(Locale.ROOT);
+
+        Matcher iso = ISO.matcher(folded);
+        if (iso.find()) {
+            return date(iso.group(1), Integer.parseInt(iso.group(3)), iso.group(4), today);
+        }
+        Matcher numeric = NUMERIC.matcher(folded);
+        if (numeric.find()) {
+            return date(numeric.group(3), Integer.parseInt(numeric.group(2)), numeric.group(1), today);
+        }
+        Matcher named = NAMED.matcher(folded);
+        if (named.find()) {
+            Integer month = MONTHS.get(named.group(2).substring(0, 3));
+            return month != null ? date(named.group(3), month, named.group(1), today) : null;
+        }
+        return null;
+    }
+
+    private static LocalDate date(String year, int month, String day, LocalDate today) {
+        int fullYear = Integer.parseInt(year);
+        try {
+            if (year.length() != 2) {
+                return LocalDate.of(fullYear, month, Integer.parseInt(day));
+            }
+            // 20yy unless that is more than a year after today
+            LocalDate date = LocalDate.of(2000 + fullYear, month, Integer.parseInt(day));
+            return date.isAfter(today.plusYears(1)) ? date.minusYears(100) : date;
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.vita.vitacheck.parser;
+
+import com.vita.vitacheck.dto.MedicalTestItemResponse;
+
+// confidence is between 0 and 1: the share of result rows the parser fully understood
+public record LabParseResult(
+    MedicalTestItemResponse extraction,
+    double confidence
+) {}
@@ -0,0 +1,14 @@
+package com.vita.vitacheck.parser;
+
+import java.util.List;
+
+// Deterministic parser for the bulletin layout of one laboratory.
+// Implementations are Spring beans and are picked up by LabReportParserEngine.
+public interface LabReportParser {
+
+    String laboratory();
+
+    boolean claims(List<PdfTextLine> lines);
+
+    LabParseResult parse(List<PdfTextLine> lines);
+}
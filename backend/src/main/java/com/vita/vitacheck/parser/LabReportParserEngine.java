@@ -0,0 +1,55 @@
+package com.vita.vitacheck.parser;
+
+import com.vita.vitacheck.dto.MedicalTestItemResponse;
+import com.vita.vitacheck.service.PdfTextExtractionService;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Optional;
+
+@Service
+@RequiredArgsConstructor
+public class LabReportParserEngine {
+
+    private final List<LabReportParser> parsers;
+    private final PdfTextExtractionService pdfTextExtractionService;
+
+    @Value("${app.lab-parsers.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.lab-parsers.min-confidence:0.9}")
+    private double minConfidence;
+
+    // Empty when no parser recognises the document or the best parse is not trustworthy enough
+    public Optional<MedicalTestItemResponse> parse(byte[] fileBytes) {
+        if (!enabled || parsers.isEmpty()) {
+            return Optional.empty();
+        }
+
+        List<PdfTextLine> lines = pdfTextExtractionService.extractLines(fileBytes);
+        if (lines.isEmpty()) {
+            return Optional.empty();
+        }
+
+        for (LabReportParser parser : parsers) {
+            if (!parser.claims(lines)) {
+                continue;
+            }
+
+            try {
+                LabParseResult result = parser.parse(lines);
+                System.out.println("Parser [" + parser.laboratory() + "] confidence: " + result.confidence());
+                if (result.confidence() >= minConfidence) {
+                    return Optional.of(result.extraction());
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Parser [" + parser.laboratory() + "] failed: " + e.getMessage());
+            }
+        }
+
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,30 @@
+package com.vita.vitacheck.parser;
+
+import com.vita.vitacheck.analyte.AnalyteIndex;
+
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Component
+public class MedLifeReportParser extends TableLabReportParser {
+
+    public MedLifeReportParser(AnalyteIndex analyteIndex) {
+        super(analyteIndex);
+    }
+
+    @Override
+    public String laboratory() {
+        return "MedLife";
+    }
+
+    @Override
+    protected List<String> headerMarkers() {
+        return List.of("medlife");
+    }
+
+    @Override
+    protected List<String> dateLabels() {
+        return List.of("data recoltarii", "data recoltare", "recoltat la");
+    }
+}
@@ -0,0 +1,19 @@
+package com.vita.vitacheck.parser;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+// One visual line of a PDF page. Words separated by a wide horizontal gap end up in
+// separate cells, so a table row becomes one cell per column.
+public record PdfTextLine(
+    int page,
+    float y,
+    List<Cell> cells
+) {
+
+    public record Cell(String text, float startX, float endX) {}
+
+    public String text() {
+        return cells.stream().map(Cell::text).collect(Collectors.joining(" "));
+    }
+}
@@ -0,0 +1,30 @@
+package com.vita.vitacheck.parser;
+
+import com.vita.vitacheck.analyte.AnalyteIndex;
+
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Component
+public class SynevoReportParser extends TableLabReportParser {
+
+    public SynevoReportParser(AnalyteIndex analyteIndex) {
+        super(analyteIndex);
+    }
+
+    @Override
+    public String laboratory() {
+        return "Synevo";
+    }
+
+    @Override
+    protected List<String> headerMarkers() {
+        return List.of("synevo");
+    }
+
+    @Override
+    protected List<String> dateLabels() {
+        return List.of("data recoltare", "recoltat", "data si ora recoltarii");
+    }
+}
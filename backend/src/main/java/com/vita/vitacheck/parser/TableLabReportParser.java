@@ -0,0 +1,241 @@
+package com.vita.vitacheck.parser;
+
+import com.vita.vitacheck.analyte.AnalyteIndex;
+import com.vita.vitacheck.dto.MedicalTestItemResponse;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Base for laboratories whose results are a table of "name | value | unit | reference" rows.
+// Subclasses only describe how to recognise the laboratory and which lines to ignore.
+public abstract class TableLabReportParser implements LabReportParser {
+
+    // Only the header of the first page decides the laboratory, partner labs are often named further down
+    private static final int HEADER_LINES = 15;
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern PARENTHESES = Pattern.compile("\\s*\\([^)]*\\)");
+    private static final Pattern DATE = Pattern.compile("(\\d{1,2})[./-](\\d{1,2})[./-](\\d{4})");
+    private static final Pattern NUMBER = Pattern.compile("^([-+]?\\d+(?:[.,]\\d+)?)\\s*\\*?$");
+    // Values that begin like a number: flagged ("12.5 H"), censored ("<0.5") or otherwise annotated
+    private static final Pattern NUMERIC_START = Pattern.compile("^[<>≤≥]?\\s*[-+]?\\d");
+    private static final Pattern RANGE = Pattern.compile(
+            "^[\\[(]?\\s*([-+]?\\d+(?:[.,]\\d+)?)\\s*[-–]\\s*([-+]?\\d+(?:[.,]\\d+)?)\\s*[\\])]?$");
+    private static final Pattern UPPER_BOUND = Pattern.compile(
+            "^[\\[(]?\\s*(?:<|<=|≤|sub)\\s*([-+]?\\d+(?:[.,]\\d+)?)\\s*[\\])]?$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern LOWER_BOUND = Pattern.compile(
+            "^[\\[(]?\\s*(?:>|>=|≥|peste)\\s*([-+]?\\d+(?:[.,]\\d+)?)\\s*[\\])]?$", Pattern.CASE_INSENSITIVE);
+
+    private final AnalyteIndex analyteIndex;
+
+    protected TableLabReportParser(AnalyteIndex analyteIndex) {
+        this.analyteIndex = analyteIndex;
+    }
+
+    // Lower-case, diacritic free fragments found in the header of this laboratory's bulletins
+    protected abstract List<String> headerMarkers();
+
+    // Lower-case, diacritic free labels that precede the collection date
+    protected abstract List<String> dateLabels();
+
+    // Lower-case, diacritic free prefixes of lines that are never result rows
+    protected List<String> ignoredPrefixes() {
+        return List.of("analiza", "denumire", "rezultat", "interval", "pagina", "metoda", "validat", "data ");
+    }
+
+    @Override
+    public boolean claims(List<PdfTextLine> lines) {
+        int checked = 0;
+        for (PdfTextLine line : lines) {
+            if (line.page() != 1 || checked++ >= HEADER_LINES) {
+                break;
+            }
+            String text = fold(line.text());
+            for (String marker : headerMarkers()) {
+                if (text.contains(marker)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public LabParseResult parse(List<PdfTextLine> lines) {
+        List<MedicalTestItemResponse.TestItemDto> items = new ArrayList<>();
+        String collectionDate = null;
+        int candidates = 0;
+        int understood = 0;
+
+        for (PdfTextLine line : lines) {
+            String folded = fold(line.text());
+
+            if (collectionDate == null) {
+                collectionDate = findDate(folded);
+            }
+
+            List<PdfTextLine.Cell> cells = line.cells();
+            if (cells.size() < 2 || isIgnored(folded)) {
+                continue;
+            }
+
+            String name = cells.get(0).text();
+            if (!containsLetter(name)) {
+                continue;
+            }
+
+            String value = cells.get(1).text().trim();
+            Matcher valueMatcher = NUMBER.matcher(value);
+            boolean numeric = valueMatcher.matches();
+
+            String unit = null;
+            String reference = null;
+            Double min = null;
+            Double max = null;
+            for (int i = 2; i < cells.size(); i++) {
+                String cell = cells.get(i).text().trim();
+                Matcher range = RANGE.matcher(cell);
+                Matcher upper = UPPER_BOUND.matcher(cell);
+                Matcher lower = LOWER_BOUND.matcher(cell);
+                if (range.matches()) {
+                    min = toDouble(range.group(1));
+                    max = toDouble(range.group(2));
+                    reference = cell;
+                } else if (upper.matches()) {
+                    max = toDouble(upper.group(1));
+                    reference = cell;
+                } else if (lower.matches()) {
+                    min = toDouble(lower.group(1));
+                    reference = cell;
+                } else if (unit == null && reference == null) {
+                    unit = cell;
+                } else if (reference == null) {
+                    reference = cell;
+                }
+            }
+
+            if (!numeric && NUMERIC_START.matcher(value).lookingAt()) {
+                // A result the parser can't read: reading "<0.5" as 0.5 or keeping "12.5 H" as text
+                // would both be wrong, so it only lowers the confidence
+                candidates++;
+                continue;
+            }
+
+            if (!numeric) {
+                // Qualitative rows (e.g. "Negativ") are kept when they come with a reference text.
+                // They rarely have a unit, so a single trailing text cell is the reference. A bare
+                // "name | value" row ("Grup sanguin | A II") is only a result when the name is a known
+                // analyte, otherwise it is a header field such as "Medic | Dr. Popescu".
+                String textReference = reference != null ? reference : unit;
+                String textUnit = reference != null ? unit : null;
+                boolean result = cells.size() >= 3
+                        ? textReference != null
+                        : analyteIndex.canonicalId(name) != null;
+                if (result && containsLetter(value)) {
+                    candidates++;
+                    understood++;
+                    items.add(buildItem(name, null, value, textUnit, null, null, textReference));
+                }
+                continue;
+            }
+
+            candidates++;
+            if (unit == null && reference == null) {
+                continue;
+            }
+
+            understood++;
+            items.add(buildItem(name, toDouble(valueMatcher.group(1)), null, unit, min, max, reference));
+        }
+
+        MedicalTestItemResponse extraction = new MedicalTestItemResponse();
+        extraction.setLaboratory(laboratory());
+        extraction.setCollection_date(collectionDate);
+        extraction.setRezults(items);
+
+        // Without a date the analytics charts cannot place the bulletin, so it does not count as understood
+        double confidence = candidates == 0 || collectionDate == null ? 0.0 : (double) understood / candidates;
+        return new LabParseResult(extraction, confidence);
+    }
+
+    private MedicalTestItemResponse.TestItemDto buildItem(String rawName, Double numericValue, String stringValue,
+            String unit, Double min, Double max, String reference) {
+        String name = stripDiacritics(PARENTHESES.matcher(rawName).replaceAll("")).trim();
+        if ("%".equals(unit) && !name.endsWith("%")) {
+            name = name + " %";
+        }
+
+        MedicalTestItemResponse.TestItemDto dto = new MedicalTestItemResponse.TestItemDto();
+        dto.setTest_name(name);
+        dto.setNumeric_value(numericValue);
+        dto.setString_value(stringValue);
+        dto.setUm(unit);
+        dto.setMin_reference(min);
+        dto.setMax_reference(max);
+        dto.setText_reference(reference);
+        dto.setFlag(flag(numericValue, min, max));
+        return dto;
+    }
+
+    private String flag(Double value, Double min, Double max) {
+        if (value == null) {
+            return null;
+        }
+        if (min != null && value < min) {
+            return "Deficit";
+        }
+        if (max != null && value > max) {
+            return "Crescut";
+        }
+        return "Normal";
+    }
+
+    private String findDate(String foldedLine) {
+        for (String label : dateLabels()) {
+            int index = foldedLine.indexOf(label);
+            if (index < 0) {
+                continue;
+            }
+            Matcher matcher = DATE.matcher(foldedLine);
+            if (matcher.find(index)) {
+                return String.format("%02d-%02d-%s", Integer.parseInt(matcher.group(1)),
+                        Integer.parseInt(matcher.group(2)), matcher.group(3));
+            }
+        }
+        return null;
+    }
+
+    private boolean isIgnored(String foldedLine) {
+        for (String prefix : ignoredPrefixes()) {
+            if (foldedLine.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean containsLetter(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.isLetter(text.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Double toDouble(String number) {
+        return Double.valueOf(number.replace(',', '.'));
+    }
+
+    protected static String fold(String text) {
+        return stripDiacritics(text).toLowerCase(Locale.ROOT).trim();
+    }
+
+    private static String stripDiacritics(String text) {
+        return DIACRITICS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+    }
+}
@@ -0,0 +1,19 @@
+package com.vita.vitacheck.repository;
+
+import com.vita.vitacheck.model.AnalysisJob;
+import com.vita.vitacheck.model.AnalysisJobStatus;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.JpaRepository;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface AnalysisJobRepository extends JpaRepository<AnalysisJob, Long> {
+    Optional<AnalysisJob> findFirstByMedicalTest_IdOrderByCreatedAtDesc(Long medicalTestId);
+    Optional<AnalysisJob> findFirstByMedicalTest_IdAndStatusIn(Long medicalTestId, Collection<AnalysisJobStatus> statuses);
+    List<AnalysisJob> findByMedicalTest_IdInOrderByCreatedAtDesc(Collection<Long> medicalTestIds);
+
+    // With the test, whose owner decides which per-user queue a resumed job goes to
+    @EntityGraph(attributePaths = "medicalTest")
+    List<AnalysisJob> findByStatusInOrderByCreatedAtAsc(Collection<AnalysisJobStatus> statuses);
+}
@@ -0,0 +1,17 @@
+package com.vita.vitacheck.repository;
+
+import com.vita.vitacheck.model.AnalyteSeries;
+import com.vita.vitacheck.model.User;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface AnalyteSeriesRepository extends JpaRepository<AnalyteSeries, Long> {
+    List<AnalyteSeries> findByUser(User user);
+
+    List<AnalyteSeries> findByUserAndAnalyteIdIn(User user, Collection<Integer> analyteIds);
+
+    // analyteKey is deterministically encrypted, so the names are matched on their ciphertext
+    List<AnalyteSeries> findByUserAndAnalyteKeyIn(User user, Collection<String> analyteKeys);
+}
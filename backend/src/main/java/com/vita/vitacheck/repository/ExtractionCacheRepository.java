@@ -0,0 +1,28 @@
+package com.vita.vitacheck.repository;
+
+import com.vita.vitacheck.model.ExtractionCacheEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+public interface ExtractionCacheRepository extends JpaRepository<ExtractionCacheEntry, Long> {
+    Optional<ExtractionCacheEntry> findByContentHashAndPromptVersion(String contentHash, Integer promptVersion);
+
+    // A key that is already cached is left as it is, so concurrent analyses of one file never
+    // fail on the unique constraint. Its own transaction keeps any other failure away from the
+    // analysis. extractionJson must already be encrypted, the converter doesn't run here.
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Modifying
+    @Query(value = """
+            insert into extraction_cache (content_hash, prompt_version, extraction_json, created_at)
+            values (:contentHash, :promptVersion, :extractionJson, :createdAt)
+            on conflict (content_hash, prompt_version) do nothing""", nativeQuery = true)
+    int insertIfAbsent(@Param("contentHash") String contentHash, @Param("promptVersion") int promptVersion,
+            @Param("extractionJson") String extractionJson, @Param("createdAt") LocalDateTime createdAt);
+}
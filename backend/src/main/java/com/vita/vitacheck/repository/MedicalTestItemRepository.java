@@ -3,8 +3,17 @@ package com.vita.vitacheck.repository;
 import com.vita.vitacheck.model.MedicalTest;
 import com.vita.vitacheck.model.MedicalTestItem;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
 import java.util.List;
 
 public interface MedicalTestItemRepository extends JpaRepository<MedicalTestItem, Long> {
     List<MedicalTestItem> findByMedicalTest(MedicalTest medicalTest);
+
+    // A single statement; loaded items of the test are not touched
+    @Modifying
+    @Query("delete from MedicalTestItem i where i.medicalTest = :medicalTest")
+    int deleteAllInBatchByMedicalTest(@Param("medicalTest") MedicalTest medicalTest);
 }
@@ -1,10 +1,57 @@
 package com.vita.vitacheck.repository;
 
+import com.vita.vitacheck.dto.MedicalTestSummary;
 import com.vita.vitacheck.model.MedicalTest;
 import com.vita.vitacheck.model.User;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 public interface MedicalTestRepository extends JpaRepository<MedicalTest, Long> {
     List<MedicalTest> findByUserOrderByUploadDateDesc(User user);
-}
\ No newline at end of file
+
+    List<MedicalTest> findByUserOrderByCollectionDateAscIdAsc(User user);
+
+    List<MedicalTest> findTop500ByIdGreaterThanAndCollectionDateIsNullAndTestDateIsNotNullOrderByIdAsc(Long id);
+
+    // Bulletins without a readable collection date count by their upload day, as on the charts
+    @Query("""
+            select t.id from MedicalTest t
+            where t.user = :user
+              and (t.collectionDate between :from and :to
+                or (t.collectionDate is null and t.uploadDate >= :fromTime and t.uploadDate < :untilTime))""")
+    List<Long> findIdsCollectedBetween(@Param("user") User user, @Param("from") LocalDate from,
+            @Param("to") LocalDate to, @Param("fromTime") LocalDateTime fromTime,
+            @Param("untilTime") LocalDateTime untilTime);
+
+    boolean existsByBlobRef(String blobRef);
+
+    @Query("select t.blobRef from MedicalTest t where t.blobRef in :blobRefs")
+    List<String> findBlobRefsIn(@Param("blobRefs") Collection<String> blobRefs);
+
+    @Query("select t.id from MedicalTest t where t.user = :user and t.id in :ids")
+    List<Long> findIdsByUserAndIdIn(@Param("user") User user, @Param("ids") Collection<Long> ids);
+
+    @Query("""
+            select t.id as id, t.fileName as fileName, t.fileType as fileType, t.uploadDate as uploadDate
+            from MedicalTest t
+            where t.user = :user
+            order by t.uploadDate desc, t.id desc""")
+    List<MedicalTestSummary> findSummariesByUser(@Param("user") User user, Limit limit);
+
+    // Keyset page: everything strictly after (uploadDate, id) in the listing order
+    @Query("""
+            select t.id as id, t.fileName as fileName, t.fileType as fileType, t.uploadDate as uploadDate
+            from MedicalTest t
+            where t.user = :user
+              and (t.uploadDate < :uploadDate or (t.uploadDate = :uploadDate and t.id < :id))
+            order by t.uploadDate desc, t.id desc""")
+    List<MedicalTestSummary> findSummariesByUserAfter(@Param("user") User user,
+            @Param("uploadDate") LocalDateTime uploadDate, @Param("id") Long id, Limit limit);
+}
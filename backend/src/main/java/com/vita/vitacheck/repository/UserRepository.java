@@ -1,13 +1,49 @@
 package com.vita.vitacheck.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import jakarta.persistence.LockModeType;
 
 import com.vita.vitacheck.model.User;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByEmail(String email);
-    Optional<User> findByCnp(String cnp);
-    Optional<User> findByPhoneNumber(String phoneNumber);
+    Optional<User> findByCnpIndex(String cnpIndex);
+    Optional<User> findByPhoneNumberIndex(String phoneNumberIndex);
+
+    // Every other account holding one of these identifiers, in a single query
+    @Query("""
+            select u from User u
+            where (u.email = :email or u.cnpIndex = :cnpIndex or u.phoneNumberIndex = :phoneNumberIndex)
+              and (:excludedId is null or u.id <> :excludedId)""")
+    List<User> findConflicting(@Param("email") String email, @Param("cnpIndex") String cnpIndex,
+            @Param("phoneNumberIndex") String phoneNumberIndex, @Param("excludedId") Long excludedId);
+
+    List<User> findTop500ByIdGreaterThanAndCnpIndexIsNullOrderByIdAsc(Long id);
+
+    // Serializes analytics series updates of one user
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    Optional<User> findWithLockById(Long id);
+
+    // Null until the user's tests change for the first time
+    @Query("select u.dataVersion from User u where u.id = :id")
+    Long findDataVersionById(@Param("id") Long id);
+
+    @Modifying
+    @Query(value = "update _user set data_version = coalesce(data_version, 0) + 1 where id = :id", nativeQuery = true)
+    int incrementDataVersion(@Param("id") Long id);
+
+    // The series of these users are rebuilt on their next analytics request, under a new ETag
+    @Modifying
+    @Query(value = "update _user set series_version = null, data_version = coalesce(data_version, 0) + 1 where id in :ids",
+            nativeQuery = true)
+    int invalidateSeries(@Param("ids") Collection<Long> ids);
 }
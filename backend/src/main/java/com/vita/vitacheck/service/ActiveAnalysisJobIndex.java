@@ -0,0 +1,38 @@
+package com.vita.vitacheck.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+// At most one queued or running analysis job per test, enforced by the database so two
+// concurrent "analyze" requests can't both insert one. ddl-auto can't declare a partial index,
+// so it is created here once the EntityManagerFactory has brought the table up to date. Jobs
+// that the old check-then-insert let through twice are failed first, keeping the earliest.
+@Component
+@DependsOn("entityManagerFactory")
+@RequiredArgsConstructor
+public class ActiveAnalysisJobIndex {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @PostConstruct
+    public void createIndex() {
+        int duplicates = jdbcTemplate.update("""
+                update analysis_jobs set status = 'FAILED', finished_at = now(),
+                        error_message = 'Duplicate of an earlier analysis of the same test'
+                where status in ('QUEUED', 'RUNNING')
+                  and exists (select 1 from analysis_jobs earlier
+                              where earlier.medical_test_id = analysis_jobs.medical_test_id
+                                and earlier.status in ('QUEUED', 'RUNNING')
+                                and earlier.id < analysis_jobs.id)""");
+        if (duplicates > 0) {
+            System.out.println("Failed " + duplicates + " duplicate analysis jobs");
+        }
+
+        jdbcTemplate.execute("""
+                create unique index if not exists uk_analysis_jobs_active_test on analysis_jobs (medical_test_id)
+                where status in ('QUEUED', 'RUNNING')""");
+    }
+}
@@ -0,0 +1,281 @@
+package com.vita.vitacheck.service;
+
+import com.vita.vitacheck.dto.AnalysisJobResponse;
+import com.vita.vitacheck.model.AnalysisJob;
+import com.vita.vitacheck.model.AnalysisJobStatus;
+import com.vita.vitacheck.model.MedicalTest;
+import com.vita.vitacheck.repository.AnalysisJobRepository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+@Service
+@RequiredArgsConstructor
+public class AnalysisJobService {
+
+    private static final EnumSet<AnalysisJobStatus> ACTIVE_STATUSES = EnumSet.of(AnalysisJobStatus.QUEUED,
+            AnalysisJobStatus.RUNNING);
+
+    private final AnalysisJobRepository analysisJobRepository;
+    private final MedicalTestService medicalTestService;
+    private final ExecutorService analysisExecutor;
+
+    // Jobs of one user handed to the executor at the same time; the rest wait in userJobs, so a
+    // batch upload can't fill the shared queue and hold everyone else's analyses back
+    @Value("${app.analysis.per-user-limit:2}")
+    private int perUserLimit;
+
+    private final Map<Long, UserJobs> userJobs = new HashMap<>();
+    // Jobs the executor had no room for, oldest first; guarded by userJobs
+    private final ArrayDeque<PendingJob> deferred = new ArrayDeque<>();
+
+    // How long a client is told to wait when the executor's queue is full
+    @Value("${app.analysis.queue-full-retry-after:30s}")
+    private Duration queueFullRetryAfter;
+
+    public AnalysisJobResponse enqueue(MedicalTest test) {
+        // Pressing "analyze" twice should not start a second Gemini call for the same file. Two
+        // concurrent requests can both pass the check; the partial unique index on active jobs
+        // (ActiveAnalysisJobIndex) lets only one insert through and the other returns its job.
+        AnalysisJob active = analysisJobRepository
+                .findFirstByMedicalTest_IdAndStatusIn(test.getId(), ACTIVE_STATUSES)
+                .orElse(null);
+        if (active != null) {
+            return toResponse(active, test.getId());
+        }
+
+        AnalysisJob job = AnalysisJob.builder()
+                .medicalTest(test)
+                .status(AnalysisJobStatus.QUEUED)
+                .createdAt(LocalDateTime.now())
+                .build();
+        try {
+            job = analysisJobRepository.save(job);
+        } catch (DataIntegrityViolationException e) {
+            // The job that won may already be done, then this test has no active job to show
+            AnalysisJob winner = analysisJobRepository
+                    .findFirstByMedicalTest_IdAndStatusIn(test.getId(), ACTIVE_STATUSES)
+                    .or(() -> analysisJobRepository.findFirstByMedicalTest_IdOrderByCreatedAtDesc(test.getId()))
+                    .orElseThrow(() -> e);
+            return toResponse(winner, test.getId());
+        }
+
+        if (!submit(job.getId(), test.getUser().getId())) {
+            markFinished(job.getId(), AnalysisJobStatus.FAILED, "Analysis queue is full, please try again later");
+            throw new QueueFullException(queueFullRetryAfter);
+        }
+        return toResponse(job, test.getId());
+    }
+
+    public AnalysisJobResponse getLatestJob(Long medicalTestId) {
+        AnalysisJob job = analysisJobRepository.findFirstByMedicalTest_IdOrderByCreatedAtDesc(medicalTestId)
+                .orElseThrow(() -> new RuntimeException("No analysis was requested for this test"));
+        return toResponse(job, medicalTestId);
+    }
+
+    // Latest job of each test that has one, for following a batch upload in one request
+    public List<AnalysisJobResponse> getLatestJobs(List<Long> medicalTestIds) {
+        Map<Long, AnalysisJob> latest = new LinkedHashMap<>();
+        for (AnalysisJob job : analysisJobRepository.findByMedicalTest_IdInOrderByCreatedAtDesc(medicalTestIds)) {
+            latest.putIfAbsent(job.getMedicalTest().getId(), job);
+        }
+        return latest.entrySet().stream()
+                .map(entry -> toResponse(entry.getValue(), entry.getKey()))
+                .toList();
+    }
+
+    // Jobs that were still queued or running when the application stopped are picked up again.
+    // Those the executor has no room for stay QUEUED and are handed over as running jobs finish.
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumePendingJobs() {
+        List<AnalysisJob> pending = analysisJobRepository.findByStatusInOrderByCreatedAtAsc(ACTIVE_STATUSES);
+        for (AnalysisJob job : pending) {
+            job.setStatus(AnalysisJobStatus.QUEUED);
+            job.setStartedAt(null);
+            analysisJobRepository.save(job);
+            System.out.println("Resuming analysis job #" + job.getId());
+
+            PendingJob next = new PendingJob(job.getId(), job.getMedicalTest().getUser().getId());
+            boolean full;
+            synchronized (userJobs) {
+                full = !deferred.isEmpty();
+            }
+            if (full || !submit(next.jobId(), next.userId())) {
+                defer(next);
+            }
+        }
+    }
+
+    // False when the executor's queue is full; the job then holds no slot
+    private boolean submit(Long jobId, Long userId) {
+        synchronized (userJobs) {
+            UserJobs jobs = userJobs.computeIfAbsent(userId, id -> new UserJobs());
+            if (jobs.running >= perUserLimit) {
+                jobs.waiting.add(jobId);
+                return true;
+            }
+            jobs.running++;
+        }
+
+        if (!execute(jobId, userId)) {
+            freeSlot(userId);
+            return false;
+        }
+        return true;
+    }
+
+    private boolean execute(Long jobId, Long userId) {
+        try {
+            analysisExecutor.execute(() -> {
+                try {
+                    runJob(jobId);
+                } finally {
+                    release(userId);
+                    dispatchDeferred();
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    // Hands a finished job's slot to the user's next waiting job. If the executor is full, the
+    // user's waiting jobs move to the deferred ones, which submit() spreads out again later.
+    private void release(Long userId) {
+        Long next;
+        synchronized (userJobs) {
+            UserJobs jobs = userJobs.get(userId);
+            next = jobs.waiting.poll();
+            if (next == null) {
+                if (--jobs.running == 0) {
+                    userJobs.remove(userId);
+                }
+                return;
+            }
+        }
+        if (execute(next, userId)) {
+            return;
+        }
+        synchronized (userJobs) {
+            UserJobs jobs = userJobs.get(userId);
+            deferred.add(new PendingJob(next, userId));
+            while (!jobs.waiting.isEmpty()) {
+                deferred.add(new PendingJob(jobs.waiting.poll(), userId));
+            }
+        }
+        freeSlot(userId);
+    }
+
+    private void freeSlot(Long userId) {
+        synchronized (userJobs) {
+            UserJobs jobs = userJobs.get(userId);
+            if (--jobs.running == 0 && jobs.waiting.isEmpty()) {
+                userJobs.remove(userId);
+            }
+        }
+    }
+
+    private void defer(PendingJob job) {
+        synchronized (userJobs) {
+            deferred.add(job);
+        }
+    }
+
+    // Called whenever a job finishes, so its place in the executor's queue goes to a deferred job
+    private void dispatchDeferred() {
+        while (true) {
+            PendingJob next;
+            synchronized (userJobs) {
+                next = deferred.poll();
+            }
+            if (next == null) {
+                return;
+            }
+            if (!submit(next.jobId(), next.userId())) {
+                synchronized (userJobs) {
+                    deferred.addFirst(next);
+                }
+                return;
+            }
+        }
+    }
+
+    private void runJob(Long jobId) {
+        AnalysisJob job = analysisJobRepository.findById(jobId).orElse(null);
+        if (job == null || job.getStatus() != AnalysisJobStatus.QUEUED) {
+            return;
+        }
+
+        job.setStatus(AnalysisJobStatus.RUNNING);
+        job.setStartedAt(LocalDateTime.now());
+        job = analysisJobRepository.save(job);
+
+        try {
+            medicalTestService.analyzeTest(job.getMedicalTest().getId());
+            markFinished(jobId, AnalysisJobStatus.DONE, null);
+        } catch (Exception e) {
+            System.err.println("Analysis job #" + jobId + " failed: " + e.getMessage());
+            markFinished(jobId, AnalysisJobStatus.FAILED, e.getMessage());
+        }
+    }
+
+    private void markFinished(Long jobId, AnalysisJobStatus status, String errorMessage) {
+        analysisJobRepository.findById(jobId).ifPresent(job -> {
+            job.setStatus(status);
+            job.setErrorMessage(errorMessage);
+            job.setFinishedAt(LocalDateTime.now());
+            analysisJobRepository.save(job);
+        });
+    }
+
+    private AnalysisJobResponse toResponse(AnalysisJob job, Long medicalTestId) {
+        return AnalysisJobResponse.builder()
+                .jobId(job.getId())
+                .medicalTestId(medicalTestId)
+                .status(job.getStatus())
+                .errorMessage(job.getErrorMessage())
+                .createdAt(job.getCreatedAt())
+                .startedAt(job.getStartedAt())
+                .finishedAt(job.getFinishedAt())
+                .build();
+    }
+
+    // The shared executor queue is full; answered with 503 and a Retry-After header
+    public static class QueueFullException extends RuntimeException {
+
+        private final Duration retryAfter;
+
+        public QueueFullException(Duration retryAfter) {
+            super("Analysis queue is full, please try again later");
+            this.retryAfter = retryAfter;
+        }
+
+        public Duration getRetryAfter() {
+            return retryAfter;
+        }
+    }
+
+    private record PendingJob(Long jobId, Long userId) {
+    }
+
+    private static final class UserJobs {
+        private int running;
+        private final ArrayDeque<Long> waiting = new ArrayDeque<>();
+    }
+}
@@ -1,5 +1,6 @@
 package com.vita.vitacheck.service;
 
+import com.vita.vitacheck.config.BlindIndex;
 import com.vita.vitacheck.dto.RegisterRequest;
 import com.vita.vitacheck.dto.LoginRequest;
 import com.vita.vitacheck.model.PasswordResetToken;
@@ -13,6 +14,7 @@ import lombok.RequiredArgsConstructor;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.Period;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 
@@ -29,17 +31,22 @@ public class AuthService {
 
     private final PasswordResetTokenRepository tokenRepository;
     private final EmailService emailService;
+    private final PrincipalCache principalCache;
 
     public User register(RegisterRequest request) {
-        if (userRepository.findByEmail(request.getEmail()).isPresent()) {
+        String cnpIndex = BlindIndex.cnp(request.getCnp());
+        String phoneNumberIndex = BlindIndex.phoneNumber(request.getPhoneNumber());
+        List<User> conflicting = userRepository.findConflicting(request.getEmail(), cnpIndex, phoneNumberIndex, null);
+
+        if (conflicting.stream().anyMatch(u -> u.getEmail().equals(request.getEmail()))) {
             throw new RuntimeException("An account with this email already exists");
         }
 
-        if (userRepository.findByCnp(request.getCnp()).isPresent()) {
+        if (conflicting.stream().anyMatch(u -> cnpIndex.equals(u.getCnpIndex()))) {
             throw new RuntimeException("An account with this CNP already exists");
         }
 
-        if (userRepository.findByPhoneNumber(request.getPhoneNumber()).isPresent()) {
+        if (conflicting.stream().anyMatch(u -> phoneNumberIndex.equals(u.getPhoneNumberIndex()))) {
             throw new RuntimeException("An account with this phone number already exists");
         }
 
@@ -112,6 +119,7 @@ public class AuthService {
         User user = resetToken.getUser();
         user.setPassword(passwordEncoder.encode(newPassword));
         userRepository.save(user);
+        principalCache.evictAfterCommit(user.getEmail());
 
         // Delete token so it can't be used again
         tokenRepository.delete(resetToken);
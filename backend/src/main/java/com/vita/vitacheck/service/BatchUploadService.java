@@ -0,0 +1,244 @@
+package com.vita.vitacheck.service;
+
+import com.vita.vitacheck.dto.BatchUploadResult;
+import com.vita.vitacheck.model.MedicalTest;
+import com.vita.vitacheck.model.User;
+import com.vita.vitacheck.storage.DocumentIngestPipeline;
+import com.vita.vitacheck.storage.DocumentStorageService;
+import com.vita.vitacheck.storage.SizeLimitedInputStream;
+import com.vita.vitacheck.storage.StoredDocument;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+// Stores every PDF of a batch upload, loose or inside ZIP archives, and queues its analysis.
+// Archives are read entry by entry from the multipart stream, so nothing is unpacked to disk
+// or memory. A document with the same content as one earlier in the batch is not stored again.
+//
+// Every byte an archive inflates counts against app.upload.batch.max-archive-inflated-size,
+// including the entries that are skipped, which getNextEntry inflates to find the next one.
+// Together with the limits on the archive size and its number of entries this bounds the work
+// one archive can cause.
+@Service
+public class BatchUploadService {
+
+    private static final byte[] ZIP_MAGIC = { 'P', 'K', 3, 4 };
+
+    private final MedicalTestService medicalTestService;
+    private final AnalysisJobService analysisJobService;
+    private final DocumentIngestPipeline documentIngestPipeline;
+    private final DocumentStorageService documentStorageService;
+    private final int maxFiles;
+    private final long maxArchiveSize;
+    private final long maxArchiveInflatedSize;
+    private final int maxArchiveEntries;
+
+    public BatchUploadService(MedicalTestService medicalTestService, AnalysisJobService analysisJobService,
+            DocumentIngestPipeline documentIngestPipeline, DocumentStorageService documentStorageService,
+            @Value("${app.upload.batch.max-files:200}") int maxFiles,
+            @Value("${app.upload.batch.max-archive-size:100MB}") DataSize maxArchiveSize,
+            @Value("${app.upload.batch.max-archive-inflated-size:1GB}") DataSize maxArchiveInflatedSize,
+            @Value("${app.upload.batch.max-archive-entries:1000}") int maxArchiveEntries) {
+        this.medicalTestService = medicalTestService;
+        this.analysisJobService = analysisJobService;
+        this.documentIngestPipeline = documentIngestPipeline;
+        this.documentStorageService = documentStorageService;
+        this.maxFiles = maxFiles;
+        this.maxArchiveSize = maxArchiveSize.toBytes();
+        this.maxArchiveInflatedSize = maxArchiveInflatedSize.toBytes();
+        this.maxArchiveEntries = maxArchiveEntries;
+    }
+
+    public List<BatchUploadResult> upload(List<MultipartFile> files, User user) {
+        Batch batch = new Batch(user);
+        for (MultipartFile file : files) {
+            String fileName = file.getOriginalFilename();
+            try (InputStream content = new BufferedInputStream(file.getInputStream())) {
+                if (isZip(content)) {
+                    readArchive(fileName, content, batch);
+                } else if (!batch.isFull()) {
+                    storeDocument(fileName, null, file.getContentType(), content, batch);
+                } else {
+                    batch.add(rejected(fileName, null, "A batch holds at most " + maxFiles + " documents"));
+                }
+            } catch (MaxUploadSizeExceededException | ArchiveLimitExceededException e) {
+                batch.add(rejected(fileName, null, e.getMessage()));
+            } catch (IOException e) {
+                batch.add(failed(fileName, null, "Could not read the file: " + e.getMessage()));
+            }
+        }
+
+        long queued = batch.results.stream().filter(r -> r.getStatus() == BatchUploadResult.Status.QUEUED).count();
+        System.out.println("Batch upload: " + queued + " of " + batch.results.size() + " documents queued for analysis");
+        return batch.results;
+    }
+
+    private void readArchive(String archive, InputStream content, Batch batch) throws IOException {
+        ZipInputStream zip = new InflateLimitedZipInputStream(new SizeLimitedInputStream(content, maxArchiveSize),
+                maxArchiveInflatedSize);
+        ZipEntry entry;
+        int entries = 0;
+        while ((entry = zip.getNextEntry()) != null) {
+            if (++entries > maxArchiveEntries) {
+                throw new ArchiveLimitExceededException("The archive has more than " + maxArchiveEntries
+                        + " entries, the rest of it was skipped");
+            }
+            if (entry.isDirectory() || isHidden(entry.getName())) {
+                continue;
+            }
+            String fileName = baseName(entry.getName());
+            if (batch.isFull()) {
+                batch.add(rejected(fileName, archive, "A batch holds at most " + maxFiles
+                        + " documents, the rest of the archive was skipped"));
+                return;
+            }
+            try {
+                storeDocument(fileName, archive, MediaType.APPLICATION_PDF_VALUE, zip, batch);
+            } catch (MaxUploadSizeExceededException | ArchiveLimitExceededException e) {
+                // Skipping to the next entry would inflate the rest of this one
+                batch.add(rejected(fileName, archive, e.getMessage() + ", the rest of the archive was skipped"));
+                return;
+            }
+        }
+    }
+
+    private void storeDocument(String fileName, String archive, String fileType, InputStream content, Batch batch) {
+        StoredDocument document;
+        try {
+            document = documentIngestPipeline.ingestPdf(content);
+        } catch (IllegalArgumentException e) {
+            batch.add(rejected(fileName, archive, e.getMessage()));
+            return;
+        } catch (IOException e) {
+            batch.add(failed(fileName, archive, "Could not store the file: " + e.getMessage()));
+            return;
+        }
+
+        String original = batch.stored.putIfAbsent(document.contentHash(), fileName);
+        if (original != null) {
+            documentStorageService.deleteAfterCommit(document.blobRef());
+            batch.add(BatchUploadResult.builder()
+                    .fileName(fileName)
+                    .archive(archive)
+                    .status(BatchUploadResult.Status.DUPLICATE)
+                    .duplicateOf(original)
+                    .build());
+            return;
+        }
+
+        MedicalTest test = medicalTestService.storeTest(document, fileName, fileType, batch.user);
+        BatchUploadResult.BatchUploadResultBuilder result = BatchUploadResult.builder()
+                .fileName(fileName)
+                .archive(archive)
+                .medicalTestId(test.getId());
+        try {
+            batch.add(result.status(BatchUploadResult.Status.QUEUED)
+                    .job(analysisJobService.enqueue(test))
+                    .build());
+        } catch (RuntimeException e) {
+            // Stored; the analysis can be requested again later
+            batch.add(result.status(BatchUploadResult.Status.FAILED).errorMessage(e.getMessage()).build());
+        }
+    }
+
+    private static boolean isZip(InputStream content) throws IOException {
+        content.mark(ZIP_MAGIC.length);
+        byte[] head = content.readNBytes(ZIP_MAGIC.length);
+        content.reset();
+        return Arrays.equals(head, ZIP_MAGIC);
+    }
+
+    // Finder and Explorer metadata that archivers pack along with the documents
+    private static boolean isHidden(String entryName) {
+        String name = baseName(entryName);
+        return entryName.startsWith("__MACOSX/") || name.startsWith(".") || name.equalsIgnoreCase("Thumbs.db");
+    }
+
+    private static String baseName(String entryName) {
+        return entryName.substring(entryName.lastIndexOf('/') + 1);
+    }
+
+    private static BatchUploadResult rejected(String fileName, String archive, String message) {
+        return BatchUploadResult.builder()
+                .fileName(fileName)
+                .archive(archive)
+                .status(BatchUploadResult.Status.REJECTED)
+                .errorMessage(message)
+                .build();
+    }
+
+    private static BatchUploadResult failed(String fileName, String archive, String message) {
+        return BatchUploadResult.builder()
+                .fileName(fileName)
+                .archive(archive)
+                .status(BatchUploadResult.Status.FAILED)
+                .errorMessage(message)
+                .build();
+    }
+
+    private static final class ArchiveLimitExceededException extends RuntimeException {
+
+        private ArchiveLimitExceededException(String message) {
+            super(message);
+        }
+    }
+
+    // closeEntry and getNextEntry drain the current entry through read(byte[], int, int), so
+    // the bytes of skipped entries are counted as well
+    private static final class InflateLimitedZipInputStream extends ZipInputStream {
+
+        private final long limit;
+        private long inflated;
+
+        private InflateLimitedZipInputStream(InputStream in, long limit) {
+            super(in);
+            this.limit = limit;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                inflated += read;
+                if (inflated > limit) {
+                    throw new ArchiveLimitExceededException("The archive unpacks to more than " + limit + " bytes");
+                }
+            }
+            return read;
+        }
+    }
+
+    private final class Batch {
+        private final User user;
+        // Content hash to the first file name it was stored under
+        private final Map<String, String> stored = new HashMap<>();
+        private final List<BatchUploadResult> results = new ArrayList<>();
+
+        private Batch(User user) {
+            this.user = user;
+        }
+
+        private boolean isFull() {
+            return results.size() >= maxFiles;
+        }
+
+        private void add(BatchUploadResult result) {
+            results.add(result);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.vita.vitacheck.service;
+
+import com.vita.vitacheck.config.BlindIndex;
+import com.vita.vitacheck.model.User;
+import com.vita.vitacheck.repository.UserRepository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+// Fills the blind index columns of rows written before they existed. New and updated rows get
+// them from the entities' @PrePersist/@PreUpdate.
+//
+// The indexes normalize their values, so two accounts stored as "0721 123 456" and
+// "0721-123-456" end up with the same unique phone index. The first account keeps it; the
+// other one is reported and left unindexed, and is reported again on every start until one of
+// the two is changed.
+@Component
+@RequiredArgsConstructor
+public class BlindIndexBackfill {
+
+    private final UserRepository userRepository;
+    private final PlatformTransactionManager transactionManager;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+        AtomicInteger unindexed = new AtomicInteger();
+        int users = 0;
+        Long lastId = 0L;
+        while (true) {
+            Long after = lastId;
+            List<User> batch = transaction.execute(status -> {
+                List<User> rows = userRepository.findTop500ByIdGreaterThanAndCnpIndexIsNullOrderByIdAsc(after);
+                // Indexes claimed earlier in this batch, not flushed yet
+                Map<String, Long> claimed = new HashMap<>();
+                for (User user : rows) {
+                    String cnpIndex = BlindIndex.cnp(user.getCnp());
+                    String phoneNumberIndex = BlindIndex.phoneNumber(user.getPhoneNumber());
+                    Long cnpOwner = owner(user, cnpIndex, claimed, userRepository::findByCnpIndex);
+                    Long phoneNumberOwner = owner(user, phoneNumberIndex, claimed,
+                            userRepository::findByPhoneNumberIndex);
+                    if (cnpOwner != null || phoneNumberOwner != null) {
+                        System.err.println("Blind index backfill: user #" + user.getId() + " has the same "
+                                + (cnpOwner != null ? "CNP as user #" + cnpOwner : "phone number as user #" + phoneNumberOwner)
+                                + ", left unindexed");
+                        unindexed.incrementAndGet();
+                        continue;
+                    }
+                    user.setCnpIndex(cnpIndex);
+                    user.setPhoneNumberIndex(phoneNumberIndex);
+                    if (cnpIndex != null) {
+                        claimed.put(cnpIndex, user.getId());
+                    }
+                    if (phoneNumberIndex != null) {
+                        claimed.put(phoneNumberIndex, user.getId());
+                    }
+                }
+                return rows;
+            });
+            if (batch.isEmpty()) {
+                break;
+            }
+            users += batch.size();
+            lastId = batch.get(batch.size() - 1).getId();
+        }
+
+        users -= unindexed.get();
+        if (users > 0) {
+            System.out.println("Blind indexes filled for " + users + " users");
+        }
+    }
+
+    // The account already holding this index, if any
+    private static Long owner(User user, String index, Map<String, Long> claimed,
+            Function<String, Optional<User>> finder) {
+        if (index == null) {
+            return null;
+        }
+        if (claimed.containsKey(index)) {
+            return claimed.get(index);
+        }
+        return finder.apply(index)
+                .map(User::getId)
+                .filter(id -> !id.equals(user.getId()))
+                .orElse(null);
+    }
+}
@@ -0,0 +1,70 @@
+package com.vita.vitacheck.service;
+
+import com.vita.vitacheck.model.MedicalTest;
+import com.vita.vitacheck.model.User;
+import com.vita.vitacheck.parser.CollectionDateParser;
+import com.vita.vitacheck.repository.MedicalTestRepository;
+import com.vita.vitacheck.repository.UserRepository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Fills MedicalTest.collectionDate for bulletins analyzed before the column existed. Dates the
+// parser cannot read stay null and are placed by upload date, as they were before. Series built
+// before a test got its date are invalidated, so the next analytics request rebuilds them.
+@Component
+@RequiredArgsConstructor
+public class CollectionDateBackfill {
+
+    private final MedicalTestRepository medicalTestRepository;
+    private final UserRepository userRepository;
+    private final PrincipalCache principalCache;
+    private final PlatformTransactionManager transactionManager;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+        int filled = 0;
+        Long lastId = 0L;
+        while (true) {
+            Long after = lastId;
+            List<MedicalTest> batch = transaction.execute(status -> {
+                List<MedicalTest> rows = medicalTestRepository
+                        .findTop500ByIdGreaterThanAndCollectionDateIsNullAndTestDateIsNotNullOrderByIdAsc(after);
+                Set<Long> userIds = new HashSet<>();
+                for (MedicalTest test : rows) {
+                    test.setCollectionDate(CollectionDateParser.parse(test.getTestDate()));
+                    if (test.getCollectionDate() != null) {
+                        userIds.add(test.getUser().getId());
+                    }
+                }
+                if (!userIds.isEmpty()) {
+                    userRepository.invalidateSeries(userIds);
+                    // The cached principals still have the old seriesVersion
+                    for (User user : userRepository.findAllById(userIds)) {
+                        principalCache.evictAfterCommit(user.getEmail());
+                    }
+                }
+                return rows;
+            });
+            if (batch.isEmpty()) {
+                break;
+            }
+            filled += (int) batch.stream().filter(test -> test.getCollectionDate() != null).count();
+            lastId = batch.get(batch.size() - 1).getId();
+        }
+
+        if (filled > 0) {
+            System.out.println("Collection dates filled for " + filled + " tests");
+        }
+    }
+}
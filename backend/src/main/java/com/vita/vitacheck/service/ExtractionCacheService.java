@@ -0,0 +1,59 @@
+package com.vita.vitacheck.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vita.vitacheck.dto.MedicalTestItemResponse;
+import com.vita.vitacheck.config.StringEncryptionConverter;
+import com.vita.vitacheck.repository.ExtractionCacheRepository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.Optional;
+
+@Service
+@RequiredArgsConstructor
+public class ExtractionCacheService {
+
+    private static final StringEncryptionConverter ENCRYPTION = new StringEncryptionConverter();
+
+    private final ExtractionCacheRepository extractionCacheRepository;
+    private final ObjectMapper objectMapper;
+
+    public Optional<MedicalTestItemResponse> lookup(String contentHash) {
+        return extractionCacheRepository
+                .findByContentHashAndPromptVersion(contentHash, MedicalExtractionService.PROMPT_VERSION)
+                .map(entry -> {
+                    try {
+                        return objectMapper.readValue(entry.getExtractionJson(), MedicalTestItemResponse.class);
+                    } catch (Exception e) {
+                        System.err.println("Ignoring unreadable extraction cache entry #" + entry.getId());
+                        return null;
+                    }
+                });
+    }
+
+    // Not transactional itself: the insert runs in its own transaction, which is already over
+    // when a failure is caught here, so the caller's transaction is never marked rollback-only.
+    // When another analysis of the same file stored it first, its entry is kept.
+    public void store(String contentHash, MedicalTestItemResponse extractedData) {
+        try {
+            String json = ENCRYPTION.convertToDatabaseColumn(objectMapper.writeValueAsString(extractedData));
+            extractionCacheRepository.insertIfAbsent(contentHash, MedicalExtractionService.PROMPT_VERSION, json,
+                    LocalDateTime.now());
+        } catch (Exception e) {
+            System.err.println("Could not store extraction in cache: " + e.getMessage());
+        }
+    }
+
+    public static String sha256Hex(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.vita.vitacheck.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+// Meters of the extraction pipeline, read through /actuator/metrics/<name>:
+//   gemini.requests          timer per model and status (429, 404, ...; "error" for I/O failures)
+//   gemini.key.responses     count per key index, model and status
+//   gemini.model.fallbacks   count of retries that moved to another model, per from/to model
+//   gemini.request.payload   bytes of the document sent, per payload (text or pdf)
+//   gemini.response.payload  characters of the JSON Gemini returned
+//   extraction.items         items extracted per document, per source (cache, local, gemini)
+//   extraction.autocorrect   Gemini answers repaired before parsing, per kind (wrapped_object, bare_items)
+@Component
+public class ExtractionMetrics {
+
+    private final MeterRegistry registry;
+
+    public ExtractionMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public Timer.Sample startGeminiRequest() {
+        return Timer.start(registry);
+    }
+
+    public void geminiResponse(Timer.Sample sample, String model, int keyIndex, String status) {
+        sample.stop(Timer.builder("gemini.requests")
+                .description("generateContent calls")
+                .tag("model", model)
+                .tag("status", status)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .register(registry));
+        Counter.builder("gemini.key.responses")
+                .description("generateContent responses per API key")
+                .tag("key", String.valueOf(keyIndex))
+                .tag("model", model)
+                .tag("status", status)
+                .register(registry)
+                .increment();
+    }
+
+    public void modelFallback(String from, String to) {
+        Counter.builder("gemini.model.fallbacks")
+                .description("Retries of an extraction on another model")
+                .tag("from", from)
+                .tag("to", to)
+                .register(registry)
+                .increment();
+    }
+
+    public void requestPayload(String payload, long bytes) {
+        DistributionSummary.builder("gemini.request.payload")
+                .description("Size of the document sent to Gemini")
+                .baseUnit("bytes")
+                .tag("payload", payload)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(bytes);
+    }
+
+    public void responsePayload(long characters) {
+        DistributionSummary.builder("gemini.response.payload")
+                .description("Size of the JSON returned by Gemini")
+                .baseUnit("characters")
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(characters);
+    }
+
+    public void extractedItems(String source, int items) {
+        DistributionSummary.builder("extraction.items")
+                .description("Items extracted per document")
+                .baseUnit("items")
+                .tag("source", source)
+                .register(registry)
+                .record(items);
+    }
+
+    public void autocorrect(String kind) {
+        Counter.builder("extraction.autocorrect")
+                .description("Gemini answers repaired before parsing")
+                .tag("kind", kind)
+                .register(registry)
+                .increment();
+    }
+}
@@ -0,0 +1,126 @@
+package com.vita.vitacheck.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.springframework.http.MediaType;
+import org.springframework.http.StreamingHttpOutputMessage;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.ResponseExtractor;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+// Writes generateContent requests and reads their responses without building JSON trees.
+// The PDF is base64 encoded on the fly into the request body, so the only full copy of the
+// document in memory is the byte array the caller already holds.
+@Component
+public class GeminiCodec {
+
+    private final JsonFactory jsonFactory;
+
+    public GeminiCodec(ObjectMapper objectMapper) {
+        this.jsonFactory = objectMapper.getFactory();
+    }
+
+    // documentText is sent instead of the PDF when it is not null
+    public RequestCallback generateContentRequest(String prompt, String documentText, byte[] fileBytes) {
+        return request -> {
+            request.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+            if (request instanceof StreamingHttpOutputMessage streaming) {
+                streaming.setBody(out -> writeRequest(out, prompt, documentText, fileBytes));
+            } else {
+                writeRequest(request.getBody(), prompt, documentText, fileBytes);
+            }
+        };
+    }
+
+    // Returns candidates[0].content.parts[0].text, or null when Gemini sent no candidate
+    public ResponseExtractor<String> candidateTextExtractor() {
+        return response -> readCandidateText(response.getBody());
+    }
+
+    private void writeRequest(OutputStream out, String prompt, String documentText, byte[] fileBytes)
+            throws IOException {
+        try (JsonGenerator generator = jsonFactory.createGenerator(out)) {
+            // The HTTP client owns the stream
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("contents");
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("parts");
+
+            generator.writeStartObject();
+            generator.writeStringField("text", prompt);
+            generator.writeEndObject();
+
+            generator.writeStartObject();
+            if (documentText != null) {
+                generator.writeStringField("text", documentText);
+            } else {
+                generator.writeObjectFieldStart("inlineData");
+                generator.writeStringField("mimeType", "application/pdf");
+                generator.writeFieldName("data");
+                generator.writeBinary(new ByteArrayInputStream(fileBytes), fileBytes.length);
+                generator.writeEndObject();
+            }
+            generator.writeEndObject();
+
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.writeEndArray();
+
+            generator.writeObjectFieldStart("generationConfig");
+            generator.writeStringField("responseMimeType", "application/json");
+            generator.writeEndObject();
+
+            generator.writeEndObject();
+        }
+    }
+
+    private String readCandidateText(InputStream body) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT
+                    || !moveToField(parser, "candidates") || !moveToFirstElement(parser)
+                    || !moveToField(parser, "content")
+                    || !moveToField(parser, "parts") || !moveToFirstElement(parser)
+                    || !moveToField(parser, "text")) {
+                return null;
+            }
+            // The rest of the response (usage metadata, other candidates) is never read
+            return parser.getValueAsString();
+        }
+    }
+
+    // Expects the parser on START_OBJECT, leaves it on the value of the field
+    private boolean moveToField(JsonParser parser, String field) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            return false;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            parser.nextToken();
+            if (field.equals(name)) {
+                return true;
+            }
+            parser.skipChildren();
+        }
+        return false;
+    }
+
+    // Expects the parser on START_ARRAY, leaves it on the first element
+    private boolean moveToFirstElement(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            return false;
+        }
+        JsonToken first = parser.nextToken();
+        return first != null && first != JsonToken.END_ARRAY;
+    }
+}
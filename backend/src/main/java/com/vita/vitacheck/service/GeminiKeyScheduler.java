@@ -0,0 +1,202 @@
+package com.vita.vitacheck.service;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Hands out (model, API key) combinations for Gemini calls. Every combination has its own
+// token bucket and cooldown deadline, so keys that just returned 429 are not retried until
+// their quota resets, and concurrent analyses are spread over the least loaded keys.
+@Component
+public class GeminiKeyScheduler {
+
+    @Value("${gemini.api.keys}")
+    private List<String> apiKeys;
+
+    @Value("${gemini.api.models:gemini-2.5-flash,gemini-3-flash-preview}")
+    private List<String> models;
+
+    @Value("${gemini.scheduler.requests-per-minute:10}")
+    private int requestsPerMinute;
+
+    @Value("${gemini.scheduler.default-cooldown:60s}")
+    private Duration defaultCooldown;
+
+    // A model that returns 404 is parked for this long on every key
+    @Value("${gemini.scheduler.missing-model-cooldown:1h}")
+    private Duration missingModelCooldown;
+
+    // A key whose request timed out or failed on the server side is left alone for this long
+    @Value("${gemini.scheduler.error-cooldown:15s}")
+    private Duration errorCooldown;
+
+    @Value("${gemini.scheduler.max-wait:5m}")
+    private Duration maxWait;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition slotFreed = lock.newCondition();
+    private final List<Slot> slots = new ArrayList<>();
+
+    @PostConstruct
+    public void init() {
+        if (apiKeys == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (int m = 0; m < models.size(); m++) {
+            for (int k = 0; k < apiKeys.size(); k++) {
+                slots.add(new Slot(m, k, requestsPerMinute, now));
+            }
+        }
+    }
+
+    // Blocks until a combination is free. When every key is throttled the caller waits for the
+    // earliest quota reset instead of failing; it only gives up after gemini.scheduler.max-wait.
+    public Lease acquire() throws InterruptedException {
+        return acquire(Long.MAX_VALUE);
+    }
+
+    // Same, but also gives up at notAfter (epoch millis), the caller's own deadline
+    public Lease acquire(long notAfter) throws InterruptedException {
+        if (slots.isEmpty()) {
+            throw new RuntimeException("Nu a fost configurată nicio cheie API Gemini.");
+        }
+
+        long deadline = Math.min(System.currentTimeMillis() + maxWait.toMillis(), notAfter);
+        lock.lock();
+        try {
+            while (true) {
+                long now = System.currentTimeMillis();
+                Slot best = null;
+                long earliest = Long.MAX_VALUE;
+
+                for (Slot slot : slots) {
+                    slot.refill(now, requestsPerMinute);
+                    long readyAt = slot.readyAt(now, requestsPerMinute);
+                    if (readyAt > now) {
+                        earliest = Math.min(earliest, readyAt);
+                    } else if (best == null || slot.inFlight < best.inFlight
+                            || (slot.inFlight == best.inFlight && slot.tokens > best.tokens)) {
+                        // Slots are ordered by model preference, so ties keep the preferred model
+                        best = slot;
+                    }
+                }
+
+                if (best != null) {
+                    best.tokens -= 1;
+                    best.inFlight++;
+                    return new Lease(best);
+                }
+
+                if (earliest > deadline) {
+                    throw new RuntimeException("❌ Toate cele " + slots.size()
+                            + " combinații (chei + modele) și-au consumat cota sau au dat eroare.");
+                }
+
+                System.out.println("All Gemini keys are throttled, waiting " + (earliest - now) + " ms for a quota reset");
+                slotFreed.await(Math.max(earliest - now, 1), TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static class Slot {
+        final int modelIndex;
+        final int keyIndex;
+        double tokens;
+        long lastRefill;
+        long cooldownUntil;
+        int inFlight;
+
+        Slot(int modelIndex, int keyIndex, int capacity, long now) {
+            this.modelIndex = modelIndex;
+            this.keyIndex = keyIndex;
+            this.tokens = capacity;
+            this.lastRefill = now;
+        }
+
+        void refill(long now, int capacity) {
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * capacity / 60_000.0);
+            lastRefill = now;
+        }
+
+        long readyAt(long now, int capacity) {
+            long tokenReady = tokens >= 1 ? now : now + (long) Math.ceil((1 - tokens) * 60_000.0 / capacity);
+            return Math.max(tokenReady, cooldownUntil);
+        }
+    }
+
+    public class Lease {
+        private final Slot slot;
+        private boolean released;
+
+        private Lease(Slot slot) {
+            this.slot = slot;
+        }
+
+        public String model() {
+            return models.get(slot.modelIndex);
+        }
+
+        public String key() {
+            return apiKeys.get(slot.keyIndex);
+        }
+
+        public int keyIndex() {
+            return slot.keyIndex;
+        }
+
+        public void release() {
+            finish(() -> {});
+        }
+
+        // retryAfter may be null when Gemini did not say when the quota resets
+        public void rateLimited(Duration retryAfter) {
+            long cooldown = (retryAfter != null ? retryAfter : defaultCooldown).toMillis();
+            finish(() -> {
+                slot.cooldownUntil = System.currentTimeMillis() + cooldown;
+                slot.tokens = Math.min(slot.tokens, 0);
+            });
+        }
+
+        // Timeouts, dropped connections and 5xx answers: the next attempt should go to another key
+        public void failed() {
+            long until = System.currentTimeMillis() + errorCooldown.toMillis();
+            finish(() -> slot.cooldownUntil = Math.max(slot.cooldownUntil, until));
+        }
+
+        public void modelNotFound() {
+            long until = System.currentTimeMillis() + missingModelCooldown.toMillis();
+            finish(() -> {
+                for (Slot other : slots) {
+                    if (other.modelIndex == slot.modelIndex) {
+                        other.cooldownUntil = Math.max(other.cooldownUntil, until);
+                    }
+                }
+            });
+        }
+
+        private void finish(Runnable update) {
+            lock.lock();
+            try {
+                if (released) {
+                    return;
+                }
+                released = true;
+                slot.inFlight--;
+                update.run();
+                slotFreed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.vita.vitacheck.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.orm.jpa.EntityManagerFactoryDependsOnPostProcessor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+// medical_test_items ids used to come from an IDENTITY column, and ddl-auto would create the
+// new sequence starting at 1. This moves the sequence past the highest existing id before the
+// EntityManagerFactory is built, so no request or resumed job can draw an id from it first.
+// Once it is there, setval leaves it unchanged on later starts.
+@Component
+@RequiredArgsConstructor
+public class ItemIdSequenceMigration {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @PostConstruct
+    public void alignSequence() {
+        // On an empty database ddl-auto creates the table and the sequence together
+        Boolean hasItems = jdbcTemplate.queryForObject(
+                "select to_regclass('medical_test_items') is not null", Boolean.class);
+        if (!Boolean.TRUE.equals(hasItems)) {
+            return;
+        }
+
+        // What ddl-auto would create for allocationSize = 50
+        jdbcTemplate.execute("create sequence if not exists medical_test_items_seq start with 1 increment by 50");
+        Long value = jdbcTemplate.queryForObject("""
+                select setval('medical_test_items_seq', greatest(
+                        (select coalesce(max(id), 0) from medical_test_items),
+                        (select last_value from medical_test_items_seq)))""", Long.class);
+        System.out.println("medical_test_items_seq at " + value);
+    }
+
+    @Component
+    static class EntityManagerFactoryDependency extends EntityManagerFactoryDependsOnPostProcessor {
+
+        EntityManagerFactoryDependency() {
+            super(ItemIdSequenceMigration.class);
+        }
+    }
+}
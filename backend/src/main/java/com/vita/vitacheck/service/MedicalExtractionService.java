@@ -1,45 +1,67 @@
 package com.vita.vitacheck.service;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.vita.vitacheck.dto.MedicalTestItemResponse;
 import com.vita.vitacheck.model.MedicalTest;
 import com.vita.vitacheck.model.MedicalTestItem;
 import com.vita.vitacheck.repository.MedicalTestItemRepository;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientResponseException;
 import org.springframework.web.client.RestTemplate;
 
-import java.util.Base64;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
-import java.util.Arrays;
 
 @Service
 public class MedicalExtractionService {
 
-    @Value("${gemini.api.keys}")
-    private List<String> apiKeys;
-
-    private final List<String> models = Arrays.asList("gemini-2.5-flash","gemini-3-flash-preview");
-    private final AtomicInteger currentComboIndex = new AtomicInteger(0);
-
     private final RestTemplate restTemplate;
-    private final ObjectMapper objectMapper;
     private final MedicalTestItemRepository medicalTestItemRepository;
-
-    public MedicalExtractionService(RestTemplate restTemplate, ObjectMapper objectMapper,
-            MedicalTestItemRepository medicalTestItemRepository) {
+    private final PdfTextExtractionService pdfTextExtractionService;
+    private final GeminiKeyScheduler geminiKeyScheduler;
+    private final GeminiCodec geminiCodec;
+    private final ExtractionMetrics extractionMetrics;
+    // Budget of one extraction over all keys and models, waits for quota resets included
+    private final int maxAttempts;
+    private final Duration deadline;
+
+    public MedicalExtractionService(@Qualifier("geminiRestTemplate") RestTemplate restTemplate,
+            MedicalTestItemRepository medicalTestItemRepository,
+            PdfTextExtractionService pdfTextExtractionService,
+            GeminiKeyScheduler geminiKeyScheduler,
+            GeminiCodec geminiCodec,
+            ExtractionMetrics extractionMetrics,
+            @Value("${gemini.request.max-attempts:10}") int maxAttempts,
+            @Value("${gemini.request.deadline:10m}") Duration deadline) {
         this.restTemplate = restTemplate;
-        this.objectMapper = objectMapper;
         this.medicalTestItemRepository = medicalTestItemRepository;
+        this.pdfTextExtractionService = pdfTextExtractionService;
+        this.geminiKeyScheduler = geminiKeyScheduler;
+        this.geminiCodec = geminiCodec;
+        this.extractionMetrics = extractionMetrics;
+        this.maxAttempts = maxAttempts;
+        this.deadline = deadline;
     }
 
+    // Kept as a template so the API key never ends up in the http.client.requests uri tag
+    private static final String GENERATE_CONTENT_URL = "https://generativelanguage.googleapis.com/v1beta/models/{model}:generateContent?key={key}";
+
+    private static final Pattern RETRY_DELAY = Pattern.compile("\"retryDelay\"\\s*:\\s*\"(\\d+(?:\\.\\d+)?)s\"");
+
+    // Bump whenever SYSTEM_PROMPT changes, so cached extractions made with the old prompt are not reused
+    public static final int PROMPT_VERSION = 1;
+
     private static final String SYSTEM_PROMPT = """
             Ești un sistem expert de extracție a datelor medicale.
             Analizează buletinul de analize medicale atașat (PDF) și extrage toate rezultatele.
@@ -69,87 +91,115 @@ public class MedicalExtractionService {
             }
             """;
 
+    private static final String TEXT_LAYER_NOTE = """
+            Documentul nu este atașat ca PDF: mai jos este textul extras din PDF, rând cu rând, în ordinea în care apare în pagină.
+            Fiecare rând al unui tabel de rezultate apare pe o singură linie.
+            """;
+
     public String extractDataFromPdf(byte[] fileBytes) throws Exception {
-        return callGeminiApi(fileBytes, SYSTEM_PROMPT);
+        // PDFs with a real text layer are sent as plain text, which is far smaller than the base64 document
+        String documentText = pdfTextExtractionService.extractTextLayer(fileBytes).orElse(null);
+        if (documentText != null) {
+            System.out.println("Text layer found, sending " + documentText.length() + " characters instead of the PDF");
+            extractionMetrics.requestPayload("text", documentText.getBytes(StandardCharsets.UTF_8).length);
+        } else {
+            extractionMetrics.requestPayload("pdf", fileBytes.length);
+        }
+        return callGeminiApi(fileBytes, documentText, SYSTEM_PROMPT);
     }
 
-    private String callGeminiApi(byte[] fileBytes, String prompt) throws Exception {
+    private String callGeminiApi(byte[] fileBytes, String documentText, String prompt) throws Exception {
 
-        if (apiKeys == null || apiKeys.isEmpty()) {
-            throw new RuntimeException("Nu a fost configurată nicio cheie API Gemini.");
-        }
+        String documentPart = documentText != null ? TEXT_LAYER_NOTE + "\n" + documentText : null;
+        RequestCallback requestCallback = geminiCodec.generateContentRequest(prompt, documentPart, fileBytes);
 
-        String base64File = Base64.getEncoder().encodeToString(fileBytes);
-
-        ObjectNode requestBody = objectMapper.createObjectNode();
-        ArrayNode contentsArray = requestBody.putArray("contents");
-        ObjectNode partsObject = contentsArray.addObject();
-        ArrayNode partsArray = partsObject.putArray("parts");
-
-        ObjectNode textPart = partsArray.addObject();
-        textPart.put("text", prompt);
-
-        ObjectNode inlineDataPart = partsArray.addObject();
-        ObjectNode inlineData = inlineDataPart.putObject("inlineData");
-        inlineData.put("mimeType", "application/pdf");
-        inlineData.put("data", base64File);
-
-        ObjectNode generationConfig = requestBody.putObject("generationConfig");
-        generationConfig.put("responseMimeType", "application/json");
-
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        HttpEntity<String> requestEntity = new HttpEntity<>(objectMapper.writeValueAsString(requestBody), headers);
-
-        int totalCombinations = apiKeys.size() * models.size();
-        ResponseEntity<String> response = null;
-
-        outer: for (String model : models) {
-
-            for (String key : apiKeys) {
-                String url = "https://generativelanguage.googleapis.com/v1beta/models/" + model
-                        + ":generateContent?key=" + key;
-
-                try {
-                    System.out.println("Calling API with model [" + model + "] and key #" + apiKeys.indexOf(key));
-                    response = restTemplate.postForEntity(url, requestEntity, String.class);
-                    break outer;
-
-                } catch (HttpClientErrorException e) {
-                    if (e.getStatusCode().value() == 429) 
-                    {
-                        System.out.println("Rate limit exceeded for model[" + model + "] and key #" + apiKeys.indexOf(key));
-                        currentComboIndex.incrementAndGet();
-                    } 
-                    else if (e.getStatusCode().value() == 404) 
-                    {
-                        System.out.println("Model [" + model + "] not found (404)");
-                        currentComboIndex.incrementAndGet();
-                    } 
-                    else 
-                    {
-                        throw e;
-                    }
-                }
+        String extractedJson = null;
+        boolean answered = false;
+        String previousModel = null;
+        long giveUpAt = System.currentTimeMillis() + deadline.toMillis();
+        int attempts = 0;
+
+        while (!answered) {
+            if (attempts == maxAttempts || System.currentTimeMillis() >= giveUpAt) {
+                throw new RuntimeException("Gemini did not answer after " + attempts + " attempts");
             }
+            attempts++;
 
+            // Waits for the earliest quota reset when every key is throttled, but not past giveUpAt
+            GeminiKeyScheduler.Lease lease = geminiKeyScheduler.acquire(giveUpAt);
+            if (previousModel != null && !previousModel.equals(lease.model())) {
+                extractionMetrics.modelFallback(previousModel, lease.model());
+            }
+            previousModel = lease.model();
+            Timer.Sample sample = extractionMetrics.startGeminiRequest();
+
+            try {
+                System.out.println("Calling API with model [" + lease.model() + "] and key #" + lease.keyIndex());
+                extractedJson = restTemplate.execute(GENERATE_CONTENT_URL, HttpMethod.POST, requestCallback,
+                        geminiCodec.candidateTextExtractor(), lease.model(), lease.key());
+                extractionMetrics.geminiResponse(sample, lease.model(), lease.keyIndex(), "200");
+                answered = true;
+                lease.release();
+
+            } catch (HttpClientErrorException e) {
+                extractionMetrics.geminiResponse(sample, lease.model(), lease.keyIndex(),
+                        String.valueOf(e.getStatusCode().value()));
+                if (e.getStatusCode().value() == 429) 
+                {
+                    System.out.println("Rate limit exceeded for model[" + lease.model() + "] and key #" + lease.keyIndex());
+                    lease.rateLimited(retryAfter(e));
+                } 
+                else if (e.getStatusCode().value() == 404) 
+                {
+                    System.out.println("Model [" + lease.model() + "] not found (404)");
+                    lease.modelNotFound();
+                } 
+                else 
+                {
+                    lease.release();
+                    throw e;
+                }
+            } catch (HttpServerErrorException | ResourceAccessException e) {
+                // 5xx answers carry a status; timeouts and connection failures don't
+                String status = e instanceof RestClientResponseException response
+                        ? String.valueOf(response.getStatusCode().value())
+                        : "error";
+                extractionMetrics.geminiResponse(sample, lease.model(), lease.keyIndex(), status);
+                System.out.println("Request with model [" + lease.model() + "] and key #" + lease.keyIndex()
+                        + " failed (" + e.getMessage() + "), trying another key");
+                lease.failed();
+            } catch (RuntimeException e) {
+                extractionMetrics.geminiResponse(sample, lease.model(), lease.keyIndex(), "error");
+                lease.release();
+                throw e;
+            }
         }
 
-        if (response == null) {
-            throw new RuntimeException("❌ Toate cele " + totalCombinations
-                    + " combinații (chei + modele) și-au consumat cota sau au dat eroare.");
+        if (extractedJson == null) {
+            throw new RuntimeException("Gemini did not return any candidate text");
         }
+        extractionMetrics.responsePayload(extractedJson.length());
 
-        JsonNode rootNode = objectMapper.readTree(response.getBody());
-        JsonNode textNode = rootNode
-                .path("candidates").get(0)
-                .path("content")
-                .path("parts").get(0)
-                .path("text");
+        return extractedJson;
+    }
 
-        String extractedJson = textNode.asText();
+    // Retry-After header (seconds) first, then the retryDelay Gemini puts in the error body (e.g. "17s")
+    private Duration retryAfter(HttpClientErrorException e) {
+        HttpHeaders responseHeaders = e.getResponseHeaders();
+        String header = responseHeaders != null ? responseHeaders.getFirst(HttpHeaders.RETRY_AFTER) : null;
+        if (header != null) {
+            try {
+                return Duration.ofSeconds(Long.parseLong(header.trim()));
+            } catch (NumberFormatException ignored) {
+                // HTTP-date form, fall through to the body
+            }
+        }
 
-        return extractedJson;
+        Matcher matcher = RETRY_DELAY.matcher(e.getResponseBodyAsString());
+        if (matcher.find()) {
+            return Duration.ofMillis((long) Math.ceil(Double.parseDouble(matcher.group(1)) * 1000));
+        }
+        return null;
     }
 
     public MedicalTestItemResponse getTestData(MedicalTest test) {
@@ -1,11 +1,18 @@
 package com.vita.vitacheck.service;
 
+import com.vita.vitacheck.analyte.AnalyteIndex;
+import com.vita.vitacheck.analyte.UnitCatalog;
+import com.vita.vitacheck.dto.AnalyticsQuery;
 import com.vita.vitacheck.dto.MedicalItemsProcessingResponse;
+import com.vita.vitacheck.model.AnalyteMeasurement;
+import com.vita.vitacheck.model.AnalyteSeries;
 import com.vita.vitacheck.model.MedicalTest;
 import com.vita.vitacheck.model.MedicalTestItem;
 import com.vita.vitacheck.model.MedicalTestItemLimits;
 import com.vita.vitacheck.model.User;
+import com.vita.vitacheck.repository.AnalyteSeriesRepository;
 import com.vita.vitacheck.repository.MedicalTestRepository;
+import com.vita.vitacheck.repository.UserRepository;
 
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
@@ -13,107 +20,368 @@ import org.springframework.stereotype.Service;
 
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.OptionalDouble;
+import java.util.Set;
 
 @Service
 @RequiredArgsConstructor
 public class MedicalItemsProcessing {
 
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+    // Open ends of a date range, inside what a PostgreSQL date column accepts
+    private static final LocalDate EARLIEST = LocalDate.of(1900, 1, 1);
+    private static final LocalDate LATEST = LocalDate.of(9999, 12, 31);
+
+    // Bump when the way series are built changes; together with the unit catalog and analyte
+    // dictionary versions it decides whether a user's stored series are still current
+    private static final int SERIES_FORMAT = 3;
+
     private final MedicalTestRepository medicalTestRepository;
+    private final AnalyteSeriesRepository analyteSeriesRepository;
+    private final UserRepository userRepository;
+    private final PrincipalCache principalCache;
+    private final UnitCatalog unitCatalog;
+    private final AnalyteIndex analyteIndex;
 
     @Transactional
     public List<MedicalItemsProcessingResponse> processTestItems(User user) {
-        List<MedicalTest> tests = medicalTestRepository.findByUserOrderByUploadDateDesc(user);
-        Map<String, MedicalItemsProcessingResponse> groupedItems = new HashMap<>();
+        return processTestItems(user, AnalyticsQuery.builder().build());
+    }
+
+    // Reads only the materialized series; bulletins and their items are never loaded here. With
+    // an analyte filter only the matching series rows are fetched and decrypted.
+    @Transactional
+    public List<MedicalItemsProcessingResponse> processTestItems(User user, AnalyticsQuery query) {
+        if (!isCurrent(user)) {
+            User lockedUser = lockUser(user.getId());
+            if (!isCurrent(lockedUser)) {
+                rebuildSeries(lockedUser);
+            }
+        }
+
+        List<AnalyteSeries> selected = query.getAnalytes() == null || query.getAnalytes().isEmpty()
+                ? analyteSeriesRepository.findByUser(user)
+                : findSeries(user, query.getAnalytes());
+
+        // The date range is resolved once in SQL, on the (user_id, collectionDate) index
+        Set<Long> inRange = null;
+        if (query.getFrom() != null || query.getTo() != null) {
+            LocalDate from = query.getFrom() != null ? query.getFrom() : EARLIEST;
+            LocalDate to = query.getTo() != null ? query.getTo() : LATEST;
+            inRange = new HashSet<>(medicalTestRepository.findIdsCollectedBetween(user, from, to,
+                    from.atStartOfDay(), to.plusDays(1).atStartOfDay()));
+        }
+
+        List<MedicalItemsProcessingResponse> finalResult = new ArrayList<>();
+        for (AnalyteSeries series : selected) {
+            List<SeriesDownsampling.Point> points = SeriesDownsampling.points(
+                    selectMeasurements(series.getMeasurements(), inRange));
+            if (query.getAggregation() == AnalyticsQuery.Aggregation.MONTH) {
+                points = SeriesDownsampling.aggregateMonthly(points);
+            }
+            if (query.getMaxPoints() != null) {
+                points = SeriesDownsampling.largestTriangleThreeBuckets(points, query.getMaxPoints());
+            }
+            if (!points.isEmpty()) {
+                finalResult.add(toResponse(series, points));
+            }
+        }
+
+        finalResult.sort(Comparator.comparing(MedicalItemsProcessingResponse::getTest_name));
+        return finalResult;
+    }
+
+    // Ids and dictionary names go through the analyteId index, anything else through the name
+    private List<AnalyteSeries> findSeries(User user, List<String> analytes) {
+        Set<Integer> ids = new HashSet<>();
+        Set<String> names = new HashSet<>();
+        for (String analyte : analytes) {
+            Integer id = parseAnalyteId(analyte);
+            if (id == null) {
+                id = analyteIndex.canonicalId(analyte);
+            }
+            if (id != null) {
+                ids.add(id);
+            } else {
+                names.add(normalizeTestName(analyte));
+            }
+        }
 
-        for (MedicalTest test : tests) {
-            String date = test.getTestDate() != null ? test.getTestDate() : test.getUploadDate().toString();
+        List<AnalyteSeries> selected = new ArrayList<>();
+        if (!ids.isEmpty()) {
+            selected.addAll(analyteSeriesRepository.findByUserAndAnalyteIdIn(user, ids));
+        }
+        if (!names.isEmpty()) {
+            selected.addAll(analyteSeriesRepository.findByUserAndAnalyteKeyIn(user, names));
+        }
+        return selected;
+    }
 
-            for (MedicalTestItem item : test.getTestItems()) {
-                if (item.getNumericValue() == null)
-                    continue;
+    private List<AnalyteMeasurement> selectMeasurements(List<AnalyteMeasurement> measurements, Set<Long> inRange) {
+        if (inRange == null) {
+            return measurements;
+        }
+        List<AnalyteMeasurement> selected = new ArrayList<>();
+        for (AnalyteMeasurement m : measurements) {
+            if (inRange.contains(m.medicalTestId())) {
+                selected.add(m);
+            }
+        }
+        return selected;
+    }
 
-                String stdName = normalizeTestName(item.getTestName());
-                String stdUnit = normalizeUnit(item.getUnit());
-                Double stdValue = item.getNumericValue();
+    // Called in the analyzeTest transaction, after the new items were attached to the test
+    @Transactional
+    public void applyTest(MedicalTest test) {
+        User user = lockUser(test.getUser().getId());
+        if (!isCurrent(user)) {
+            rebuildSeries(user);
+            return;
+        }
 
-                Double currentMin = item.getMinReference();
-                Double currentMax = item.getMaxReference();
+        SeriesIndex seriesByKey = new SeriesIndex();
+        for (AnalyteSeries series : analyteSeriesRepository.findByUser(user)) {
+            seriesByKey.add(series);
+        }
 
-                if(item.getMaxReference() == null && item.getMinReference() == null && item.getLimits() != null)
+        // Identity based: the entities' Lombok equals would walk every field, including the lazy user
+        Set<AnalyteSeries> touched = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (AnalyteSeries series : seriesByKey.all()) {
+            if (series.getMeasurements().removeIf(m -> test.getId().equals(m.medicalTestId()))) {
+                touched.add(series);
+            }
+        }
+        touched.addAll(addMeasurements(user, test, seriesByKey));
+
+        saveTouched(touched);
+    }
+
+    @Transactional
+    public void removeTest(MedicalTest test) {
+        User user = lockUser(test.getUser().getId());
+        if (!isCurrent(user)) {
+            return;
+        }
+
+        List<AnalyteSeries> touched = new ArrayList<>();
+        for (AnalyteSeries series : analyteSeriesRepository.findByUser(user)) {
+            if (series.getMeasurements().removeIf(m -> test.getId().equals(m.medicalTestId()))) {
+                touched.add(series);
+            }
+        }
+        saveTouched(touched);
+    }
+
+    @Transactional
+    public void renameTest(MedicalTest test) {
+        User user = lockUser(test.getUser().getId());
+        if (!isCurrent(user)) {
+            return;
+        }
+
+        for (AnalyteSeries series : analyteSeriesRepository.findByUser(user)) {
+            List<AnalyteMeasurement> measurements = series.getMeasurements();
+            boolean changed = false;
+            for (int i = 0; i < measurements.size(); i++) {
+                AnalyteMeasurement m = measurements.get(i);
+                if (test.getId().equals(m.medicalTestId())) {
+                    measurements.set(i, new AnalyteMeasurement(m.medicalTestId(), test.getFileName(),
+                            m.collectionDate(), m.collectedOn(), m.uploadDate(), m.numericValue(), m.unit(),
+                            m.minReference(), m.maxReference(), m.limits()));
+                    changed = true;
+                }
+            }
+            if (changed) {
+                series.setMeasurements(new ArrayList<>(measurements));
+                analyteSeriesRepository.save(series);
+            }
+        }
+    }
+
+    // Full recomputation from the bulletins, used once per account whose series are missing or outdated
+    private void rebuildSeries(User user) {
+        System.out.println("Building analytics series for user #" + user.getId());
+        analyteSeriesRepository.deleteAll(analyteSeriesRepository.findByUser(user));
+        analyteSeriesRepository.flush();
+
+        SeriesIndex seriesByKey = new SeriesIndex();
+        // Already in collection order, so the per-series sort in refreshSeries has little left to do
+        for (MedicalTest test : medicalTestRepository.findByUserOrderByCollectionDateAscIdAsc(user)) {
+            addMeasurements(user, test, seriesByKey);
+        }
+        saveTouched(seriesByKey.all());
+
+        user.setSeriesVersion(seriesVersion());
+        userRepository.save(user);
+        // The cached principal still has the old seriesVersion
+        principalCache.evictAfterCommit(user.getEmail());
+    }
+
+    private List<AnalyteSeries> addMeasurements(User user, MedicalTest test, SeriesIndex seriesByKey) {
+        List<AnalyteSeries> touched = new ArrayList<>();
+        LocalDate collectedOn = test.getCollectionDate() != null
+                ? test.getCollectionDate()
+                : test.getUploadDate().toLocalDate();
+        String date = collectedOn.format(DATE_FORMAT);
+
+        for (MedicalTestItem item : test.getTestItems()) {
+            if (item.getNumericValue() == null)
+                continue;
+
+            // Items extracted before the dictionary existed are resolved here, through its memo
+            Integer analyteId = item.getAnalyteId() != null
+                    ? item.getAnalyteId()
+                    : analyteIndex.canonicalId(item.getTestName());
+            String canonicalName = analyteId != null ? analyteIndex.name(analyteId) : null;
+            if (canonicalName == null) {
+                analyteId = null;
+            }
+            String stdName = canonicalName != null ? canonicalName : normalizeTestName(item.getTestName());
+
+            Double currentMin = item.getMinReference();
+            Double currentMax = item.getMaxReference();
+
+            if(item.getMaxReference() == null && item.getMinReference() == null && item.getLimits() != null)
+            {
+                for(MedicalTestItemLimits limit: item.getLimits())
                 {
-                    for(MedicalTestItemLimits limit: item.getLimits())
+                    if("NORMAL".equals(limit.status()))
                     {
-                        if(limit.status().equals("NORMAL"))
-                        {
-                            currentMin = limit.lowerBound();
-                            currentMax = limit.upperBound();
-                            break;
-                        }
+                        currentMin = limit.lowerBound();
+                        currentMax = limit.upperBound();
+                        break;
                     }
                 }
-                final Double finalMin = currentMin != null ? currentMin : 0.0;
-                final Double finalMax = currentMax;
+            }
 
-                MedicalItemsProcessingResponse response = groupedItems.computeIfAbsent(stdName, key -> {
-                    MedicalItemsProcessingResponse newResponse = new MedicalItemsProcessingResponse();
-                    newResponse.setTest_name(stdName);
-                    newResponse.setUm(stdUnit);
-                    newResponse.setMin_reference(finalMin);
-                    newResponse.setMax_reference(finalMax);
-                    newResponse.setLimits(item.getLimits());
+            AnalyteSeries series = seriesByKey.get(analyteId, stdName);
+            if (series == null) {
+                series = AnalyteSeries.builder()
+                        .user(user)
+                        .analyteKey(stdName)
+                        .analyteId(analyteId)
+                        .measurements(new ArrayList<>())
+                        .build();
+                seriesByKey.add(series);
+            }
 
-                    newResponse.setMeasurements(new ArrayList<>());
-                    return newResponse;
-                });
+            UnitCatalog.Conversion unit = unitCatalog.normalize(analyteId, item.getUnit());
+            series.getMeasurements().add(new AnalyteMeasurement(test.getId(), test.getFileName(), date,
+                    collectedOn, test.getUploadDate(), unit.apply(item.getNumericValue()), unit.unit(),
+                    unit.apply(currentMin), unit.apply(currentMax), unit.apply(item.getLimits())));
+            touched.add(series);
+        }
+        return touched;
+    }
 
-                MedicalItemsProcessingResponse.TestItemMeasurementDto measurement = new MedicalItemsProcessingResponse.TestItemMeasurementDto();
+    private void saveTouched(Collection<AnalyteSeries> touched) {
+        for (AnalyteSeries series : touched) {
+            if (series.getMeasurements().isEmpty()) {
+                if (series.getId() != null) {
+                    analyteSeriesRepository.delete(series);
+                }
+                continue;
+            }
+            refreshSeries(series);
+            analyteSeriesRepository.save(series);
+        }
+    }
 
-                measurement.setCollection_date(date);
-                measurement.setNumeric_value(stdValue);
-                measurement.setMedical_test_id(test.getId());
-                measurement.setFile_name(test.getFileName());
+    // Sorts the points (oldest first), takes name, unit and references from the latest upload and
+    // converts the other points to that unit where the catalog knows how
+    private void refreshSeries(AnalyteSeries series) {
+        List<AnalyteMeasurement> measurements = new ArrayList<>(series.getMeasurements());
+        measurements.sort(Comparator.comparing(AnalyteMeasurement::collectedOn,
+                Comparator.nullsLast(Comparator.naturalOrder())));
 
-                response.getMeasurements().add(measurement);
+        AnalyteMeasurement latest = measurements.stream()
+                .filter(m -> m.uploadDate() != null)
+                .max(Comparator.comparing(AnalyteMeasurement::uploadDate))
+                .orElse(measurements.get(0));
+
+        for (int i = 0; i < measurements.size(); i++) {
+            AnalyteMeasurement m = measurements.get(i);
+            if (Objects.equals(m.unit(), latest.unit())) {
+                continue;
+            }
+            OptionalDouble factor = unitCatalog.factor(series.getAnalyteId(), m.unit(), latest.unit());
+            if (factor.isPresent()) {
+                UnitCatalog.Conversion unit = new UnitCatalog.Conversion(latest.unit(), factor.getAsDouble());
+                measurements.set(i, new AnalyteMeasurement(m.medicalTestId(), m.fileName(), m.collectionDate(),
+                        m.collectedOn(), m.uploadDate(), unit.apply(m.numericValue()), unit.unit(),
+                        unit.apply(m.minReference()), unit.apply(m.maxReference()), unit.apply(m.limits())));
             }
         }
 
-        List<MedicalItemsProcessingResponse> finalResult = new ArrayList<>(groupedItems.values());
+        series.setTestName(series.getAnalyteKey());
+        series.setUnit(latest.unit());
+        series.setMinReference(latest.minReference() != null ? latest.minReference() : 0.0);
+        series.setMaxReference(latest.maxReference());
+        series.setLimits(latest.limits());
+        // A new list instance so Hibernate sees the converted column as dirty
+        series.setMeasurements(measurements);
+    }
 
-        DateTimeFormatter fmt = DateTimeFormatter.ofPattern("dd-MM-yyyy");
-        for (MedicalItemsProcessingResponse resp : finalResult) {
-            resp.getMeasurements().sort((m1, m2) -> {
-                try {
-                    LocalDate d1 = LocalDate.parse(m1.getCollection_date(), fmt);
-                    LocalDate d2 = LocalDate.parse(m2.getCollection_date(), fmt);
-                    return d1.compareTo(d2); // oldest first
-                } catch (DateTimeParseException e) {
-                    return 0;
-                }
-            });
+    private MedicalItemsProcessingResponse toResponse(AnalyteSeries series, List<SeriesDownsampling.Point> points) {
+        MedicalItemsProcessingResponse response = new MedicalItemsProcessingResponse();
+        response.setAnalyte_id(series.getAnalyteId());
+        response.setTest_name(series.getTestName());
+        response.setUm(series.getUnit());
+        response.setMin_reference(series.getMinReference());
+        response.setMax_reference(series.getMaxReference());
+        response.setLimits(series.getLimits());
+
+        List<MedicalItemsProcessingResponse.TestItemMeasurementDto> measurements = new ArrayList<>();
+        for (SeriesDownsampling.Point point : points) {
+            MedicalItemsProcessingResponse.TestItemMeasurementDto measurement = new MedicalItemsProcessingResponse.TestItemMeasurementDto();
+            measurement.setNumeric_value(point.value());
+            AnalyteMeasurement m = point.source();
+            if (m != null) {
+                measurement.setCollection_date(m.collectionDate());
+                measurement.setMedical_test_id(m.medicalTestId());
+                measurement.setFile_name(m.fileName());
+            } else {
+                measurement.setCollection_date(point.date().format(DATE_FORMAT));
+                measurement.setMin_value(point.min());
+                measurement.setMax_value(point.max());
+                measurement.setCount(point.count());
+            }
+            measurements.add(measurement);
         }
+        response.setMeasurements(measurements);
+        return response;
+    }
 
-        finalResult.sort(Comparator.comparing(MedicalItemsProcessingResponse::getTest_name));
+    // Changes whenever the same data would be charted differently
+    public int seriesVersion() {
+        return Objects.hash(SERIES_FORMAT, unitCatalog.version(), analyteIndex.version());
+    }
 
-        System.out.println("========== REZULTAT PROCESARE GRAFICE ==========");
-        finalResult.forEach(res -> {
-            System.out.println("Analiza: " + res.getTest_name() + " [" + res.getUm() + "]");
-            System.out.println("  Referinte: " + res.getMin_reference() + " - " + res.getMax_reference());
+    private boolean isCurrent(User user) {
+        return user.getSeriesVersion() != null && user.getSeriesVersion() == seriesVersion();
+    }
 
-            res.getMeasurements().forEach(m -> {
-                System.out.println("    -> Data: " + m.getCollection_date() +
-                        " | Valoare: " + m.getNumeric_value());
-            });
-            System.out.println("------------------------------------------------");
-        });
-        System.out.println("================================================");
+    private User lockUser(Long userId) {
+        return userRepository.findWithLockById(userId)
+                .orElseThrow(() -> new RuntimeException("User not found"));
+    }
 
-        return finalResult;
+    private static Integer parseAnalyteId(String analyte) {
+        try {
+            return Integer.valueOf(analyte.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
     }
 
     private String normalizeTestName(String rawName) {
@@ -123,19 +391,28 @@ public class MedicalItemsProcessing {
         return rawName.trim();
     }
 
-    private String normalizeUnit(String rawUnit) {
-        if (rawUnit == null)
-            return "";
-        String cleanUnit = rawUnit.toLowerCase().replaceAll("\\s+", "");
+    // A user's series: canonical analytes by id, names outside the dictionary by the name itself
+    private static final class SeriesIndex {
 
-        if (cleanUnit.equals("10^9/l") || cleanUnit.equals("10*3/ul") || cleanUnit.equals("10^3/ul")
-                || cleanUnit.equals("mii/µl") || cleanUnit.equals("x10^3/ul"))
-            return "mii/µL";
-        if (cleanUnit.equals("10^12/l") || cleanUnit.equals("10*6/ul") || cleanUnit.equals("mil/µl"))
-            return "mil/µL";
-        if (cleanUnit.equals("g/l"))
-            return "g/dL";
+        private final Map<Integer, AnalyteSeries> byId = new HashMap<>();
+        private final Map<String, AnalyteSeries> byName = new HashMap<>();
 
-        return rawUnit;
+        AnalyteSeries get(Integer analyteId, String name) {
+            return analyteId != null ? byId.get(analyteId) : byName.get(name);
+        }
+
+        void add(AnalyteSeries series) {
+            if (series.getAnalyteId() != null) {
+                byId.put(series.getAnalyteId(), series);
+            } else {
+                byName.put(series.getAnalyteKey(), series);
+            }
+        }
+
+        List<AnalyteSeries> all() {
+            List<AnalyteSeries> all = new ArrayList<>(byId.values());
+            all.addAll(byName.values());
+            return all;
+        }
     }
-}
\ No newline at end of file
+}
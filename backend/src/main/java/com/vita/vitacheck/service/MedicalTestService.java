@@ -3,20 +3,38 @@ package com.vita.vitacheck.service;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vita.vitacheck.analyte.AnalyteIndex;
 import com.vita.vitacheck.dto.MedicalTestItemResponse;
+import com.vita.vitacheck.dto.MedicalTestPage;
 import com.vita.vitacheck.dto.MedicalTestResponse;
+import com.vita.vitacheck.dto.MedicalTestSummary;
 import com.vita.vitacheck.model.MedicalTest;
 import com.vita.vitacheck.model.MedicalTestItem;
 import com.vita.vitacheck.model.User;
+import com.vita.vitacheck.parser.CollectionDateParser;
+import com.vita.vitacheck.parser.LabReportParserEngine;
+import com.vita.vitacheck.repository.MedicalTestItemRepository;
 import com.vita.vitacheck.repository.MedicalTestRepository;
+import com.vita.vitacheck.repository.UserRepository;
+import com.vita.vitacheck.storage.DocumentIngestPipeline;
+import com.vita.vitacheck.storage.DocumentStorageService;
+import com.vita.vitacheck.storage.StoredDocument;
 
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
+import org.hibernate.Hibernate;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.Base64;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -25,22 +43,27 @@ import java.util.stream.Collectors;
 public class MedicalTestService {
 
     private final MedicalTestRepository medicalTestRepository;
+    private final MedicalTestItemRepository medicalTestItemRepository;
+    private final UserRepository userRepository;
 
     private final MedicalExtractionService medicalExtractionService;
+    private final ExtractionCacheService extractionCacheService;
+    private final LabReportParserEngine labReportParserEngine;
     private final MedicalItemsProcessing medicalItemsProcessing;
+    private final DocumentStorageService documentStorageService;
+    private final DocumentIngestPipeline documentIngestPipeline;
+    private final AnalyteIndex analyteIndex;
+    private final ExtractionMetrics extractionMetrics;
     private final ObjectMapper objectMapper;
+    private final PlatformTransactionManager transactionManager;
 
     public MedicalTestResponse storeTest(MultipartFile file, User user) throws IOException {
+        StoredDocument document;
+        try (InputStream content = file.getInputStream()) {
+            document = documentIngestPipeline.ingestPdf(content);
+        }
 
-        MedicalTest test = MedicalTest.builder()
-                .user(user)
-                .fileName(file.getOriginalFilename())
-                .fileType(file.getContentType())
-                .uploadDate(LocalDateTime.now())
-                .data(file.getBytes())
-                .build();
-
-        MedicalTest savedTest = medicalTestRepository.save(test);
+        MedicalTest savedTest = storeTest(document, file.getOriginalFilename(), file.getContentType(), user);
 
         return MedicalTestResponse.builder()
                 .id(savedTest.getId())
@@ -50,77 +73,169 @@ public class MedicalTestService {
                 .build();
     }
 
-    @Transactional
-    public void analyzeTest(MedicalTest test, byte[] fileBytes) {
+    // A test for a document already written by the ingest pipeline
+    public MedicalTest storeTest(StoredDocument document, String fileName, String fileType, User user) {
+        MedicalTest test = MedicalTest.builder()
+                .user(user)
+                .fileName(fileName)
+                .fileType(fileType)
+                .uploadDate(LocalDateTime.now())
+                .blobRef(document.blobRef())
+                .contentLength(document.contentLength())
+                .contentHash(document.contentHash())
+                .build();
+
         try {
-            test.getTestItems().clear();
-            System.out.println("Starting AI processing for the file: " + test.getFileName());
+            return medicalTestRepository.save(test);
+        } catch (RuntimeException e) {
+            // Nothing else points to the blob; OrphanBlobSweeper catches what a crash leaves behind
+            documentStorageService.deleteAfterCommit(document.blobRef());
+            throw e;
+        }
+    }
+
+    // Reading the document and calling Gemini can take minutes (key waits, timeouts, retries), so
+    // it runs outside any transaction; only storing the result holds a connection, briefly.
+    public void analyzeTest(Long testId) {
+        MedicalTest test = medicalTestRepository.findById(testId)
+                .orElseThrow(() -> new RuntimeException("Test not found"));
 
-            String jsonFromGemini = medicalExtractionService.extractDataFromPdf(fileBytes);
-            jsonFromGemini = jsonFromGemini.trim();
+        try {
+            System.out.println("Starting AI processing for the file: " + test.getFileName());
+            Extraction extraction = extract(test);
+            new TransactionTemplate(transactionManager)
+                    .executeWithoutResult(status -> storeExtraction(testId, extraction));
+        } catch (Exception e) {
+            System.err.println("Error when extracting data with AI: " + e.getMessage());
+            throw new RuntimeException("Error when extracting data with AI: " + e.getMessage(), e);
+        }
+    }
 
-            if (jsonFromGemini.startsWith("[")) {
-                System.out.println("Warning: AI returned an Array. Trying autocorrect...");
-                JsonNode rootNode = objectMapper.readTree(jsonFromGemini);
+    private Extraction extract(MedicalTest test) throws Exception {
+        // The hash comes from the upload pipeline, so a cache hit never reads the document
+        String contentHash = test.getContentHash();
+        MedicalTestItemResponse extractedData = contentHash != null
+                ? extractionCacheService.lookup(contentHash).orElse(null)
+                : null;
+        if (extractedData != null) {
+            System.out.println("Extraction cache hit for the file: " + test.getFileName());
+            return new Extraction(extractedData, "cache");
+        }
 
-                if (rootNode.isArray() && !rootNode.isEmpty()) 
-                {
-                    if (rootNode.get(0).has("rezults")) 
-                    {
-                        jsonFromGemini = rootNode.get(0).toString();
-                    } 
-                    else if (rootNode.get(0).has("test_name")) 
-                    {
-                        ObjectNode fixedRoot = objectMapper.createObjectNode();
-                        fixedRoot.put("laboratory", "Necunoscut");
-                        fixedRoot.putNull("collection_date");
-                        fixedRoot.set("rezults", rootNode);
-                        jsonFromGemini = fixedRoot.toString();
-                    }
-                }
+        byte[] fileBytes = documentStorageService.readAll(test.getBlobRef());
+        if (contentHash == null) {
+            contentHash = ExtractionCacheService.sha256Hex(fileBytes);
+            extractedData = extractionCacheService.lookup(contentHash).orElse(null);
+            if (extractedData != null) {
+                return new Extraction(extractedData, "cache");
             }
+        }
+        extractedData = labReportParserEngine.parse(fileBytes).orElse(null);
+        if (extractedData != null) {
+            System.out.println("Parsed locally, skipping the AI call for the file: " + test.getFileName());
+            return new Extraction(extractedData, "local");
+        }
+        extractedData = parseExtraction(medicalExtractionService.extractDataFromPdf(fileBytes));
+        extractionCacheService.store(contentHash, extractedData);
+        return new Extraction(extractedData, "gemini");
+    }
 
-            MedicalTestItemResponse extractedData = objectMapper.readValue(jsonFromGemini,
-                    MedicalTestItemResponse.class);
+    // Reloaded, so a rename or delete made while the extraction ran is not overwritten
+    private void storeExtraction(Long testId, Extraction extraction) {
+        MedicalTest test = medicalTestRepository.findById(testId)
+                .orElseThrow(() -> new RuntimeException("Test not found"));
+        MedicalTestItemResponse extractedData = extraction.data();
 
-            System.out.println("Laboratory found: " + extractedData.getLaboratory());
+        // Previous items go in one DELETE. A collection that wasn't loaded yet loads empty
+        // after it, so clear() leaves no orphans to remove one by one.
+        if (!Hibernate.isInitialized(test.getTestItems())) {
+            medicalTestItemRepository.deleteAllInBatchByMedicalTest(test);
+        }
+        test.getTestItems().clear();
+
+        System.out.println("Laboratory found: " + extractedData.getLaboratory());
+
+        test.setLaboratoryName(extractedData.getLaboratory());
+        String dateTime = extractedData.getCollection_date();
+        test.setTestDate(dateTime);
+        test.setCollectionDate(CollectionDateParser.parse(dateTime));
+
+        if (extractedData.getRezults() != null) {
+            for (MedicalTestItemResponse.TestItemDto dto : extractedData.getRezults()) {
+
+                MedicalTestItem item = new MedicalTestItem();
+                item.setTestName(dto.getTest_name());
+                item.setAnalyteId(analyteIndex.canonicalId(dto.getTest_name()));
+                item.setNumericValue(dto.getNumeric_value());
+                item.setStringValue(dto.getString_value());
+                item.setUnit(dto.getUm());
+                item.setMinReference(dto.getMin_reference());
+                item.setMaxReference(dto.getMax_reference());
+                item.setTextReference(dto.getText_reference());
+                item.setFlag(dto.getFlag());
+                item.setLimits(dto.getLimits());
+
+                test.addTestItem(item);
+            }
+        }
+        System.out.println("Successfully extracted " + test.getTestItems().size() + " tests.");
+        extractionMetrics.extractedItems(extraction.source(), test.getTestItems().size());
 
-            test.setLaboratoryName(extractedData.getLaboratory());
-            String dateTime = extractedData.getCollection_date();
-            test.setTestDate(dateTime);
+        medicalTestRepository.save(test);
+        medicalItemsProcessing.applyTest(test);
+        userRepository.incrementDataVersion(test.getUser().getId());
+    }
 
-            if (extractedData.getRezults() != null) {
-                for (MedicalTestItemResponse.TestItemDto dto : extractedData.getRezults()) {
+    private MedicalTestItemResponse parseExtraction(String jsonFromGemini) throws Exception {
+        jsonFromGemini = jsonFromGemini.trim();
 
-                    MedicalTestItem item = new MedicalTestItem();
-                    item.setTestName(dto.getTest_name());
-                    item.setNumericValue(dto.getNumeric_value());
-                    item.setStringValue(dto.getString_value());
-                    item.setUnit(dto.getUm());
-                    item.setMinReference(dto.getMin_reference());
-                    item.setMaxReference(dto.getMax_reference());
-                    item.setTextReference(dto.getText_reference());
-                    item.setFlag(dto.getFlag());
-                    item.setLimits(dto.getLimits());
+        if (jsonFromGemini.startsWith("[")) {
+            System.out.println("Warning: AI returned an Array. Trying autocorrect...");
+            JsonNode rootNode = objectMapper.readTree(jsonFromGemini);
 
-                    test.addTestItem(item);
+            if (rootNode.isArray() && !rootNode.isEmpty()) 
+            {
+                if (rootNode.get(0).has("rezults")) 
+                {
+                    extractionMetrics.autocorrect("wrapped_object");
+                    jsonFromGemini = rootNode.get(0).toString();
+                } 
+                else if (rootNode.get(0).has("test_name")) 
+                {
+                    extractionMetrics.autocorrect("bare_items");
+                    ObjectNode fixedRoot = objectMapper.createObjectNode();
+                    fixedRoot.put("laboratory", "Necunoscut");
+                    fixedRoot.putNull("collection_date");
+                    fixedRoot.set("rezults", rootNode);
+                    jsonFromGemini = fixedRoot.toString();
                 }
             }
-            System.out.println("Successfully extracted " + test.getTestItems().size() + " tests.");
-
-            medicalTestRepository.save(test);
-
-        } catch (Exception e) {
-            System.err.println("Error when extracting data with AI: " + e.getMessage());
         }
+
+        return objectMapper.readValue(jsonFromGemini, MedicalTestItemResponse.class);
     }
 
-    public List<MedicalTestResponse> getUserTests(User user) {
+    // limit == null returns the whole listing; a cursor is the nextCursor of the previous page
+    public MedicalTestPage getUserTests(User user, Integer limit, String cursor) {
+        Limit pageLimit = limit != null ? Limit.of(limit + 1) : Limit.unlimited();
+
+        List<MedicalTestSummary> rows;
+        if (cursor == null || cursor.isBlank()) {
+            rows = medicalTestRepository.findSummariesByUser(user, pageLimit);
+        } else {
+            String[] position = decodeCursor(cursor);
+            rows = medicalTestRepository.findSummariesByUserAfter(user, LocalDateTime.parse(position[0]),
+                    Long.valueOf(position[1]), pageLimit);
+        }
 
-        medicalItemsProcessing.processTestItems(user);
+        String nextCursor = null;
+        if (limit != null && rows.size() > limit) {
+            rows = rows.subList(0, limit);
+            MedicalTestSummary last = rows.get(limit - 1);
+            nextCursor = encodeCursor(last.getUploadDate(), last.getId());
+        }
 
-        return medicalTestRepository.findByUserOrderByUploadDateDesc(user)
-                .stream()
+        List<MedicalTestResponse> items = rows.stream()
                 .map(test -> MedicalTestResponse.builder()
                         .id(test.getId())
                         .fileName(test.getFileName())
@@ -128,6 +243,40 @@ public class MedicalTestService {
                         .uploadDate(test.getUploadDate())
                         .build())
                 .collect(Collectors.toList());
+
+        return MedicalTestPage.builder()
+                .items(items)
+                .nextCursor(nextCursor)
+                .build();
+    }
+
+    private String encodeCursor(LocalDateTime uploadDate, Long id) {
+        String raw = uploadDate + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String[] decodeCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] position = raw.split("\\|");
+            if (position.length != 2) {
+                throw new IllegalArgumentException();
+            }
+            return position;
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("Invalid cursor");
+        }
+    }
+
+    // Read fresh on every request, the principal may come from PrincipalCache
+    public long getDataVersion(User user) {
+        Long version = userRepository.findDataVersionById(user.getId());
+        return version != null ? version : 0;
+    }
+
+    // The ids among these that belong to the user
+    public List<Long> getOwnedTestIds(List<Long> ids, User user) {
+        return medicalTestRepository.findIdsByUserAndIdIn(user, ids);
     }
 
     public MedicalTest getTestFile(Long id, User user) {
@@ -139,6 +288,7 @@ public class MedicalTestService {
         return test;
     }
 
+    @Transactional
     public void updateTestFileName(Long id, String newName, User user) {
         MedicalTest test = medicalTestRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Test not found"));
@@ -147,15 +297,28 @@ public class MedicalTestService {
 
         test.setFileName(newName);
         medicalTestRepository.save(test);
+        medicalItemsProcessing.renameTest(test);
+        userRepository.incrementDataVersion(test.getUser().getId());
     }
 
+    @Transactional
     public void deleteTestFile(Long id, User user) {
         MedicalTest test = medicalTestRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Test not found"));
         checkFileOwnership(test, user);
 
+        medicalItemsProcessing.removeTest(test);
         medicalTestRepository.delete(test);
+        userRepository.incrementDataVersion(test.getUser().getId());
+        documentStorageService.deleteAfterCommit(test.getBlobRef());
+    }
 
+    public void writeTestFile(MedicalTest test, OutputStream out) throws IOException {
+        documentStorageService.copyTo(test.getBlobRef(), out);
+    }
+
+    public void writeTestFile(MedicalTest test, OutputStream out, long offset, long length) throws IOException {
+        documentStorageService.copyTo(test.getBlobRef(), offset, length, out);
     }
 
     private void checkFileOwnership(MedicalTest test, User user) {
@@ -164,4 +327,8 @@ public class MedicalTestService {
             throw new RuntimeException("Unauthorized access to file");
         }
     }
-}
\ No newline at end of file
+
+    // What the extraction found and where it came from (cache, local parser or Gemini)
+    private record Extraction(MedicalTestItemResponse data, String source) {
+    }
+}
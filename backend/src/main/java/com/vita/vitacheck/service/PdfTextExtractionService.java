@@ -0,0 +1,155 @@
+package com.vita.vitacheck.service;
+
+import com.vita.vitacheck.parser.PdfTextLine;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.apache.pdfbox.text.TextPosition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+@Service
+public class PdfTextExtractionService {
+
+    // Below this many letters/digits per page the PDF is treated as a scan without a text layer
+    private static final int MIN_CHARS_PER_PAGE = 80;
+
+    // Fonts without a ToUnicode map come out as replacement characters; the text is useless then
+    private static final double MAX_UNMAPPED_RATIO = 0.01;
+
+    @Value("${gemini.text-layer.enabled:true}")
+    private boolean enabled;
+
+    public Optional<String> extractTextLayer(byte[] fileBytes) {
+        if (!enabled || fileBytes == null) {
+            return Optional.empty();
+        }
+
+        try (PDDocument document = Loader.loadPDF(fileBytes)) {
+            int pages = document.getNumberOfPages();
+            if (pages == 0) {
+                return Optional.empty();
+            }
+
+            PDFTextStripper stripper = new PDFTextStripper();
+            // Keep the visual row order so each table row of the bulletin stays on one line
+            stripper.setSortByPosition(true);
+            String text = stripper.getText(document);
+
+            int meaningful = 0;
+            int unmapped = 0;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == '\uFFFD') {
+                    unmapped++;
+                } else if (Character.isLetterOrDigit(c)) {
+                    meaningful++;
+                }
+            }
+
+            if (meaningful < MIN_CHARS_PER_PAGE * pages || unmapped > meaningful * MAX_UNMAPPED_RATIO) {
+                return Optional.empty();
+            }
+
+            return Optional.of(text);
+        } catch (Exception e) {
+            System.out.println("Could not read the PDF text layer, sending the whole document: " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    public List<PdfTextLine> extractLines(byte[] fileBytes) {
+        if (fileBytes == null) {
+            return List.of();
+        }
+
+        try (PDDocument document = Loader.loadPDF(fileBytes)) {
+            LineCollector collector = new LineCollector();
+            collector.setSortByPosition(true);
+            collector.getText(document);
+            return collector.lines;
+        } catch (Exception e) {
+            System.out.println("Could not read the PDF text positions: " + e.getMessage());
+            return List.of();
+        }
+    }
+
+    // Collects the words PDFBox emits per line and groups them into cells by horizontal gap
+    private static class LineCollector extends PDFTextStripper {
+
+        // A gap wider than this many average character widths starts a new table column
+        private static final float COLUMN_GAP_CHARS = 2.5f;
+
+        private final List<PdfTextLine> lines = new ArrayList<>();
+        private final List<PdfTextLine.Cell> cells = new ArrayList<>();
+        private StringBuilder cellText;
+        private float cellStart;
+        private float cellEnd;
+        private float lineY;
+
+        LineCollector() throws IOException {
+            super();
+        }
+
+        @Override
+        protected void writeString(String text, List<TextPosition> textPositions) {
+            if (textPositions.isEmpty() || text.isBlank()) {
+                return;
+            }
+
+            TextPosition first = textPositions.get(0);
+            TextPosition last = textPositions.get(textPositions.size() - 1);
+            float start = first.getXDirAdj();
+            float end = last.getXDirAdj() + last.getWidthDirAdj();
+            float charWidth = Math.max((end - start) / text.length(), 1f);
+
+            if (cellText == null) {
+                lineY = first.getYDirAdj();
+            } else if (start - cellEnd > charWidth * COLUMN_GAP_CHARS) {
+                closeCell();
+            }
+
+            if (cellText == null) {
+                cellText = new StringBuilder(text.trim());
+                cellStart = start;
+            } else {
+                cellText.append(' ').append(text.trim());
+            }
+            cellEnd = end;
+        }
+
+        @Override
+        protected void writeLineSeparator() throws IOException {
+            closeLine();
+            super.writeLineSeparator();
+        }
+
+        @Override
+        protected void endPage(PDPage page) throws IOException {
+            closeLine();
+            super.endPage(page);
+        }
+
+        private void closeCell() {
+            if (cellText != null) {
+                cells.add(new PdfTextLine.Cell(cellText.toString(), cellStart, cellEnd));
+                cellText = null;
+            }
+        }
+
+        private void closeLine() {
+            closeCell();
+            if (!cells.isEmpty()) {
+                lines.add(new PdfTextLine(getCurrentPageNo(), lineY, List.copyOf(cells)));
+                cells.clear();
+            }
+        }
+    }
+}
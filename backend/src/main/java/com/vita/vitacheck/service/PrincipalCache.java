@@ -0,0 +1,85 @@
+package com.vita.vitacheck.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+// Authenticated users by JWT subject, so a request with a valid token doesn't have to load
+// its user from the database. Entries expire after the TTL and the least recently used one is
+// dropped when the cache is full. Anything that changes a user's stored data evicts it.
+@Component
+public class PrincipalCache {
+
+    private final long ttlNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, Entry> entries;
+
+    public PrincipalCache(@Value("${application.security.principal-cache.ttl:60s}") Duration ttl,
+            @Value("${application.security.principal-cache.max-entries:10000}") int maxEntries) {
+        this.ttlNanos = ttl.toNanos();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public UserDetails get(String subject, Function<String, UserDetails> loader) {
+        long now = System.nanoTime();
+        lock.lock();
+        try {
+            Entry entry = entries.get(subject);
+            if (entry != null && now - entry.loadedAt() < ttlNanos) {
+                return entry.principal();
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        // Loaded outside the lock; two concurrent misses for one subject both hit the database
+        UserDetails principal = loader.apply(subject);
+        lock.lock();
+        try {
+            entries.put(subject, new Entry(principal, now));
+        } finally {
+            lock.unlock();
+        }
+        return principal;
+    }
+
+    public void evict(String subject) {
+        lock.lock();
+        try {
+            entries.remove(subject);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // For changes made in a transaction: evicted before the commit, a concurrent request could
+    // load and cache the old row again until the TTL runs out
+    public void evictAfterCommit(String subject) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evict(subject);
+                }
+            });
+        } else {
+            evict(subject);
+        }
+    }
+
+    private record Entry(UserDetails principal, long loadedAt) {
+    }
+}
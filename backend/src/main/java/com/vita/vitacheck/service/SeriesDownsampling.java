@@ -0,0 +1,143 @@
+package com.vita.vitacheck.service;
+
+import com.vita.vitacheck.model.AnalyteMeasurement;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+
+// Shrinks a series for the charts. Out-of-range points are never dropped: a smaller payload is
+// not worth hiding the one abnormal result of a year, so they are kept even past maxPoints.
+final class SeriesDownsampling {
+
+    // A chart point. Aggregated periods have count > 1, the period's min/max and no source.
+    record Point(LocalDate date, double value, AnalyteMeasurement source, Double min, Double max, int count,
+            boolean outOfRange) {
+    }
+
+    private SeriesDownsampling() {
+    }
+
+    // Measurements must be sorted by collectedOn, as they are stored
+    static List<Point> points(List<AnalyteMeasurement> measurements) {
+        List<Point> points = new ArrayList<>(measurements.size());
+        for (AnalyteMeasurement m : measurements) {
+            if (m.numericValue() != null) {
+                LocalDate date = m.collectedOn() != null ? m.collectedOn() : m.uploadDate().toLocalDate();
+                points.add(new Point(date, m.numericValue(), m, null, null, 1, isOutOfRange(m)));
+            }
+        }
+        return points;
+    }
+
+    // One point per calendar month with the mean as value. Out-of-range measurements of a month
+    // are also returned on their own, so they can still be opened from the chart.
+    static List<Point> aggregateMonthly(List<Point> points) {
+        List<Point> aggregated = new ArrayList<>();
+        int start = 0;
+        while (start < points.size()) {
+            YearMonth month = YearMonth.from(points.get(start).date());
+            int end = start;
+            double sum = 0;
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            while (end < points.size() && YearMonth.from(points.get(end).date()).equals(month)) {
+                double value = points.get(end).value();
+                sum += value;
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+                end++;
+            }
+
+            if (end - start == 1) {
+                aggregated.add(points.get(start));
+            } else {
+                aggregated.add(new Point(month.atDay(1), sum / (end - start), null, min, max, end - start, false));
+                for (int i = start; i < end; i++) {
+                    if (points.get(i).outOfRange()) {
+                        aggregated.add(points.get(i));
+                    }
+                }
+            }
+            start = end;
+        }
+        return aggregated;
+    }
+
+    // Largest-Triangle-Three-Buckets over the points that are not forced, with the out-of-range
+    // ones added back. The result keeps the original order and has at most maxPoints points
+    // unless more than that are out of range.
+    static List<Point> largestTriangleThreeBuckets(List<Point> points, int maxPoints) {
+        int n = points.size();
+        if (n <= maxPoints) {
+            return points;
+        }
+
+        boolean[] keep = new boolean[n];
+        keep[0] = true;
+        keep[n - 1] = true;
+        int forced = 0;
+        for (int i = 1; i < n - 1; i++) {
+            if (points.get(i).outOfRange()) {
+                keep[i] = true;
+                forced++;
+            }
+        }
+
+        int threshold = maxPoints - forced;
+        if (threshold > 2) {
+            double every = (double) (n - 2) / (threshold - 2);
+            int a = 0;
+            for (int bucket = 0; bucket < threshold - 2; bucket++) {
+                // Average of the next bucket is the third corner of the triangle
+                int nextStart = (int) Math.floor((bucket + 1) * every) + 1;
+                int nextEnd = Math.min((int) Math.floor((bucket + 2) * every) + 1, n);
+                double avgX = 0;
+                double avgY = 0;
+                for (int i = nextStart; i < nextEnd; i++) {
+                    avgX += x(points.get(i));
+                    avgY += points.get(i).value();
+                }
+                int nextSize = Math.max(1, nextEnd - nextStart);
+                avgX /= nextSize;
+                avgY /= nextSize;
+
+                int rangeStart = (int) Math.floor(bucket * every) + 1;
+                int rangeEnd = Math.min((int) Math.floor((bucket + 1) * every) + 1, n - 1);
+                double ax = x(points.get(a));
+                double ay = points.get(a).value();
+                double maxArea = -1;
+                int chosen = rangeStart;
+                for (int i = rangeStart; i < rangeEnd; i++) {
+                    double area = Math.abs((ax - avgX) * (points.get(i).value() - ay)
+                            - (ax - x(points.get(i))) * (avgY - ay));
+                    if (area > maxArea) {
+                        maxArea = area;
+                        chosen = i;
+                    }
+                }
+                keep[chosen] = true;
+                a = chosen;
+            }
+        }
+
+        List<Point> sampled = new ArrayList<>(Math.max(maxPoints, forced + 2));
+        for (int i = 0; i < n; i++) {
+            if (keep[i]) {
+                sampled.add(points.get(i));
+            }
+        }
+        return sampled;
+    }
+
+    private static double x(Point point) {
+        return point.date().toEpochDay();
+    }
+
+    private static boolean isOutOfRange(AnalyteMeasurement m) {
+        double value = m.numericValue();
+        return (m.minReference() != null && value < m.minReference())
+                || (m.maxReference() != null && value > m.maxReference());
+    }
+}
@@ -0,0 +1,36 @@
+package com.vita.vitacheck.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.orm.jpa.EntityManagerFactoryDependsOnPostProcessor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+// medical_test_items had a blind index of the test name, but analytics filters the materialized
+// series (analyteId, the deterministic analyteKey) and never queries items by name. ddl-auto
+// leaves dropped columns in place, so the column and its index are removed here, before the
+// EntityManagerFactory is built; on later starts both statements do nothing.
+@Component
+@RequiredArgsConstructor
+public class TestNameIndexMigration {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @PostConstruct
+    public void dropTestNameIndex() {
+        jdbcTemplate.execute("drop index if exists idx_medical_test_items_test_name_index");
+        Boolean hasItems = jdbcTemplate.queryForObject(
+                "select to_regclass('medical_test_items') is not null", Boolean.class);
+        if (Boolean.TRUE.equals(hasItems)) {
+            jdbcTemplate.execute("alter table medical_test_items drop column if exists test_name_index");
+        }
+    }
+
+    @Component
+    static class EntityManagerFactoryDependency extends EntityManagerFactoryDependsOnPostProcessor {
+
+        EntityManagerFactoryDependency() {
+            super(TestNameIndexMigration.class);
+        }
+    }
+}
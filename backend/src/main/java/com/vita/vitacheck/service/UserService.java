@@ -1,5 +1,6 @@
 package com.vita.vitacheck.service;
 
+import com.vita.vitacheck.config.BlindIndex;
 import com.vita.vitacheck.dto.ProfileUpdateRequest;
 import com.vita.vitacheck.dto.UserResponse;
 import com.vita.vitacheck.model.User;
@@ -10,11 +11,14 @@ import lombok.RequiredArgsConstructor;
 
 import org.springframework.stereotype.Service;
 
+import java.util.List;
+
 @Service
 @RequiredArgsConstructor
 public class UserService {
 
     private final UserRepository userRepository;
+    private final PrincipalCache principalCache;
 
     public UserResponse getUserProfile(User user) {
         return UserResponse.builder()
@@ -32,26 +36,31 @@ public class UserService {
     @Transactional
     public void updateUserProfile(User user, ProfileUpdateRequest updatedUser) {
 
-        userRepository.findByCnp(updatedUser.getCnp())
-                .ifPresent(existingUser -> {
-                    if (!existingUser.getId().equals(user.getId())) {
-                        throw new RuntimeException("This CNP is already associated with another account");
-                    }
-                });
-
-        userRepository.findByPhoneNumber(updatedUser.getPhoneNumber())
-                .ifPresent(existingUser -> {
-                    if (!existingUser.getId().equals(user.getId())) {
-                        throw new RuntimeException("This phone number is already associated with another account");
-                    }
-                });
-        user.setCnp(updatedUser.getCnp());
-        user.setFirstName(updatedUser.getFirstName());
-        user.setLastName(updatedUser.getLastName());
-        user.setPhoneNumber(updatedUser.getPhoneNumber());
-        user.setMale(updatedUser.isMale());
-        user.setAddress(updatedUser.getAddress());
-        user.setAge(updatedUser.getAge());
-        userRepository.save(user);
+        String cnpIndex = BlindIndex.cnp(updatedUser.getCnp());
+        String phoneNumberIndex = BlindIndex.phoneNumber(updatedUser.getPhoneNumber());
+        // The email isn't editable here, so only the other two identifiers can clash
+        List<User> conflicting = userRepository.findConflicting(null, cnpIndex, phoneNumberIndex, user.getId());
+
+        if (conflicting.stream().anyMatch(u -> cnpIndex.equals(u.getCnpIndex()))) {
+            throw new RuntimeException("This CNP is already associated with another account");
+        }
+
+        if (conflicting.stream().anyMatch(u -> phoneNumberIndex.equals(u.getPhoneNumberIndex()))) {
+            throw new RuntimeException("This phone number is already associated with another account");
+        }
+
+        // The principal may be the instance PrincipalCache hands to other requests, so the
+        // changes go to a copy of this transaction; the cache reloads it after the commit
+        User storedUser = userRepository.findById(user.getId())
+                .orElseThrow(() -> new RuntimeException("User not found"));
+        storedUser.setCnp(updatedUser.getCnp());
+        storedUser.setFirstName(updatedUser.getFirstName());
+        storedUser.setLastName(updatedUser.getLastName());
+        storedUser.setPhoneNumber(updatedUser.getPhoneNumber());
+        storedUser.setMale(updatedUser.isMale());
+        storedUser.setAddress(updatedUser.getAddress());
+        storedUser.setAge(updatedUser.getAge());
+        userRepository.save(storedUser);
+        principalCache.evictAfterCommit(storedUser.getEmail());
     }
 }
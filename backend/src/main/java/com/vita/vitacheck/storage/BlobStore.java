@@ -0,0 +1,29 @@
+package com.vita.vitacheck.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+// Storage backend for document contents. References returned by write() start with the
+// backend's scheme ("fs:", "pg:"), so rows written by different backends can coexist.
+public interface BlobStore {
+
+    String scheme();
+
+    String write(InputStream content) throws IOException;
+
+    // The stream handed to the reader is only valid inside the callback
+    <T> T read(String reference, long offset, BlobReader<T> reader) throws IOException;
+
+    long size(String reference) throws IOException;
+
+    void delete(String reference) throws IOException;
+
+    // Every reference the backend holds, for OrphanBlobSweeper
+    List<String> list() throws IOException;
+
+    @FunctionalInterface
+    interface BlobReader<T> {
+        T read(InputStream content) throws IOException;
+    }
+}
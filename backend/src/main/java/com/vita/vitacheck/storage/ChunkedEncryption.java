@@ -0,0 +1,238 @@
+package com.vita.vitacheck.storage;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+// Seekable document format: a 16 byte header followed by independently authenticated chunks.
+//
+//   header  = "VCB1" | key version (1) | nonce prefix (7) | chunk size (4)
+//   chunk i = AES-GCM(plaintext chunk i), nonce = prefix | i (4) | last (1), aad = header
+//
+// Key version 0 marks blobs written before the header carried the version; they were
+// encrypted with the baseline key, like the other unversioned values.
+//
+// Every chunk holds chunkSize bytes of plaintext except the last one, which may be shorter or
+// empty. The last flag in the nonce makes a blob truncated at a chunk boundary fail to decrypt.
+final class ChunkedEncryption {
+
+    static final int HEADER_SIZE = 16;
+    static final int TAG_SIZE = 16;
+    static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    private static final byte[] MAGIC = { 'V', 'C', 'B', '1' };
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private ChunkedEncryption() {
+    }
+
+    static boolean isChunked(byte[] header) {
+        return header.length >= HEADER_SIZE && Arrays.equals(header, 0, MAGIC.length, MAGIC, 0, MAGIC.length);
+    }
+
+    static int keyVersion(byte[] header) {
+        return header[4] & 0xff;
+    }
+
+    static int chunkSize(byte[] header) {
+        return ByteBuffer.wrap(header, 12, 4).getInt();
+    }
+
+    static long chunkCount(long blobSize, int chunkSize) throws IOException {
+        long body = blobSize - HEADER_SIZE;
+        if (body < TAG_SIZE) {
+            throw new IOException("Encrypted document is truncated");
+        }
+        return Math.max(1, (body + chunkSize + TAG_SIZE - 1) / (chunkSize + TAG_SIZE));
+    }
+
+    static long plaintextSize(long blobSize, int chunkSize) throws IOException {
+        return blobSize - HEADER_SIZE - chunkCount(blobSize, chunkSize) * TAG_SIZE;
+    }
+
+    static long chunkOffset(long chunk, int chunkSize) {
+        return HEADER_SIZE + chunk * (chunkSize + TAG_SIZE);
+    }
+
+    static InputStream encrypt(InputStream plaintext, int keyVersion, SecretKey key) {
+        if (keyVersion < 1 || keyVersion > 255) {
+            throw new IllegalArgumentException("Key version " + keyVersion + " does not fit the document header");
+        }
+        byte[] header = ByteBuffer.allocate(HEADER_SIZE)
+                .put(MAGIC)
+                .put((byte) keyVersion)
+                .put(randomPrefix())
+                .putInt(DEFAULT_CHUNK_SIZE)
+                .array();
+        return new EncryptingInputStream(plaintext, key, header);
+    }
+
+    // chunks must be positioned at firstChunk; the stream yields the plaintext from there on
+    static InputStream decrypt(byte[] header, InputStream chunks, long firstChunk, long chunkCount, SecretKey key) {
+        return new DecryptingInputStream(chunks, key, header, firstChunk, chunkCount);
+    }
+
+    private static byte[] randomPrefix() {
+        byte[] prefix = new byte[7];
+        RANDOM.nextBytes(prefix);
+        return prefix;
+    }
+
+    private static Cipher cipher(int mode, SecretKey key, byte[] header, long chunk, boolean last) throws IOException {
+        byte[] nonce = ByteBuffer.allocate(12)
+                .put(header, 5, 7)
+                .putInt((int) chunk)
+                .put((byte) (last ? 1 : 0))
+                .array();
+        try {
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(mode, key, new GCMParameterSpec(TAG_SIZE * 8, nonce));
+            cipher.updateAAD(header);
+            return cipher;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Could not initialize the document cipher", e);
+        }
+    }
+
+    // Base for both directions: serves a buffer that is refilled one chunk at a time
+    private abstract static class ChunkInputStream extends InputStream {
+
+        protected byte[] buffer;
+        protected int position;
+        protected int limit;
+        protected boolean finished;
+
+        protected abstract void nextChunk() throws IOException;
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (position == limit) {
+                if (finished) {
+                    return -1;
+                }
+                nextChunk();
+            }
+            int count = Math.min(len, limit - position);
+            System.arraycopy(buffer, position, b, off, count);
+            position += count;
+            return count;
+        }
+    }
+
+    private static final class EncryptingInputStream extends ChunkInputStream {
+
+        private final InputStream plaintext;
+        private final SecretKey key;
+        private final byte[] header;
+        private final int chunkSize;
+        private byte[] current;
+        private byte[] next;
+        private int currentLength = -1;
+        private long chunk;
+
+        EncryptingInputStream(InputStream plaintext, SecretKey key, byte[] header) {
+            this.plaintext = plaintext;
+            this.key = key;
+            this.header = header;
+            this.chunkSize = chunkSize(header);
+            this.current = new byte[chunkSize];
+            this.next = new byte[chunkSize];
+            this.buffer = header.clone();
+            this.limit = header.length;
+        }
+
+        @Override
+        protected void nextChunk() throws IOException {
+            if (currentLength == -1) {
+                currentLength = plaintext.readNBytes(current, 0, chunkSize);
+            }
+
+            // A full chunk is only the last one when nothing follows it
+            int nextLength = currentLength < chunkSize ? 0 : plaintext.readNBytes(next, 0, chunkSize);
+            boolean last = nextLength == 0;
+
+            try {
+                buffer = cipher(Cipher.ENCRYPT_MODE, key, header, chunk, last).doFinal(current, 0, currentLength);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Could not encrypt the document", e);
+            }
+            position = 0;
+            limit = buffer.length;
+
+            byte[] swap = current;
+            current = next;
+            next = swap;
+            currentLength = nextLength;
+            chunk++;
+            finished = last;
+        }
+
+        @Override
+        public void close() throws IOException {
+            plaintext.close();
+        }
+    }
+
+    private static final class DecryptingInputStream extends ChunkInputStream {
+
+        private final InputStream chunks;
+        private final SecretKey key;
+        private final byte[] header;
+        private final byte[] ciphertext;
+        private final long chunkCount;
+        private long chunk;
+
+        DecryptingInputStream(InputStream chunks, SecretKey key, byte[] header, long firstChunk, long chunkCount) {
+            this.chunks = chunks;
+            this.key = key;
+            this.header = header;
+            this.ciphertext = new byte[chunkSize(header) + TAG_SIZE];
+            this.chunk = firstChunk;
+            this.chunkCount = chunkCount;
+            this.finished = firstChunk >= chunkCount;
+        }
+
+        @Override
+        protected void nextChunk() throws IOException {
+            boolean last = chunk == chunkCount - 1;
+            int length = chunks.readNBytes(ciphertext, 0, ciphertext.length);
+            if (length < TAG_SIZE || (!last && length < ciphertext.length)) {
+                throw new IOException("Encrypted document is truncated");
+            }
+
+            try {
+                buffer = cipher(Cipher.DECRYPT_MODE, key, header, chunk, last).doFinal(ciphertext, 0, length);
+            } catch (AEADBadTagException e) {
+                throw new IOException("Chunk " + chunk + " of the document failed authentication", e);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Could not decrypt the document", e);
+            }
+            position = 0;
+            limit = buffer.length;
+            chunk++;
+            finished = last;
+        }
+
+        @Override
+        public void close() throws IOException {
+            chunks.close();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.vita.vitacheck.storage;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+// Single pass over an upload: the multipart stream is read once while it is sniffed, hashed,
+// counted, encrypted chunk by chunk and written to the blob store. Only the sniff window and
+// the chunk being encrypted are held in memory.
+@Service
+public class DocumentIngestPipeline {
+
+    // PDF readers accept the header anywhere in the first 1024 bytes
+    private static final int SNIFF_WINDOW = 1024;
+    private static final String PDF_HEADER = "%PDF-";
+
+    private final DocumentStorageService documentStorageService;
+    private final long maxDocumentSize;
+
+    public DocumentIngestPipeline(DocumentStorageService documentStorageService,
+            @Value("${app.upload.max-document-size:10MB}") DataSize maxDocumentSize) {
+        this.documentStorageService = documentStorageService;
+        this.maxDocumentSize = maxDocumentSize.toBytes();
+    }
+
+    // Documents over the size limit fail with MaxUploadSizeExceededException once the limit is
+    // read; the multipart limits are larger because a ZIP archive holds many documents
+    public StoredDocument ingestPdf(InputStream upload) throws IOException {
+        BufferedInputStream content = new BufferedInputStream(new SizeLimitedInputStream(upload, maxDocumentSize),
+                SNIFF_WINDOW);
+        content.mark(SNIFF_WINDOW);
+        byte[] head = content.readNBytes(SNIFF_WINDOW);
+        content.reset();
+
+        if (!isPdf(head)) {
+            throw new IllegalArgumentException("Only PDF files can be uploaded");
+        }
+        return documentStorageService.store(content);
+    }
+
+    private static boolean isPdf(byte[] head) {
+        // Latin-1 maps every byte to one char, so binary noise can't hide the marker
+        return new String(head, StandardCharsets.ISO_8859_1).contains(PDF_HEADER);
+    }
+}
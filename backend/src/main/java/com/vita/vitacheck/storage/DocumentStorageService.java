@@ -0,0 +1,214 @@
+package com.vita.vitacheck.storage;
+
+import com.vita.vitacheck.config.EncryptionConfig;
+import com.vita.vitacheck.repository.MedicalTestRepository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+import javax.crypto.SecretKey;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+
+// Encrypts documents on their way into the configured BlobStore and decrypts them on the way
+// out, always as streams. Reads are routed by the scheme of the stored reference. New blobs use
+// the ChunkedEncryption format; blobs in the old whole-file AES format are still readable.
+@Service
+public class DocumentStorageService {
+
+    private static final String LEGACY_ALGORITHM = "AES";
+
+    private final List<BlobStore> blobStores;
+    private final BlobStore writeStore;
+    private final MedicalTestRepository medicalTestRepository;
+
+    public DocumentStorageService(List<BlobStore> blobStores, MedicalTestRepository medicalTestRepository,
+            @Value("${app.storage.backend:fs}") String backend) {
+        this.blobStores = blobStores;
+        this.medicalTestRepository = medicalTestRepository;
+        this.writeStore = blobStores.stream()
+                .filter(store -> store.scheme().equals(backend))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("Unknown storage backend: " + backend));
+    }
+
+    public StoredDocument store(InputStream plaintext) throws IOException {
+        MessageDigest digest = sha256();
+        CountingInputStream counted = new CountingInputStream(new DigestInputStream(plaintext, digest));
+        String reference = writeStore.write(ChunkedEncryption.encrypt(counted, EncryptionConfig.keyVersion, key()));
+        return new StoredDocument(reference, HexFormat.of().formatHex(digest.digest()), counted.count);
+    }
+
+    // Re-encrypts a document kept in the original whole-file AES format into the chunked one
+    public StoredDocument storeLegacy(InputStream legacyCiphertext) throws IOException {
+        return store(new CipherInputStream(legacyCiphertext, legacyCipher()));
+    }
+
+    public StoredDocument restoreLegacy(String reference) throws IOException {
+        return storeOf(reference).read(reference, 0, this::storeLegacy);
+    }
+
+    public void copyTo(String reference, OutputStream out) throws IOException {
+        copyTo(reference, 0, Long.MAX_VALUE, out);
+    }
+
+    // Writes length bytes of plaintext starting at offset; only the chunks covering the range are read
+    public void copyTo(String reference, long offset, long length, OutputStream out) throws IOException {
+        BlobStore store = storeOf(reference);
+        byte[] header = store.read(reference, 0, content -> content.readNBytes(ChunkedEncryption.HEADER_SIZE));
+
+        if (!ChunkedEncryption.isChunked(header)) {
+            store.read(reference, 0, content -> {
+                InputStream plaintext = new CipherInputStream(content, legacyCipher());
+                plaintext.skipNBytes(offset);
+                return copy(plaintext, out, length);
+            });
+            return;
+        }
+
+        int chunkSize = ChunkedEncryption.chunkSize(header);
+        long chunkCount = ChunkedEncryption.chunkCount(store.size(reference), chunkSize);
+        long firstChunk = offset / chunkSize;
+        store.read(reference, ChunkedEncryption.chunkOffset(firstChunk, chunkSize), content -> {
+            InputStream plaintext = ChunkedEncryption.decrypt(header, content, firstChunk, chunkCount,
+                    keyOf(ChunkedEncryption.keyVersion(header)));
+            plaintext.skipNBytes(offset - firstChunk * chunkSize);
+            return copy(plaintext, out, length);
+        });
+    }
+
+    // Only for consumers that need the whole document at once (PDF parsing, Gemini upload)
+    public byte[] readAll(String reference) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        copyTo(reference, out);
+        return out.toByteArray();
+    }
+
+    // New blobs belong to one test, but blobs written by the content addressed store could be
+    // shared by identical uploads, so the blob only goes once no test points to it anymore
+    public void deleteAfterCommit(String reference) {
+        if (reference == null) {
+            return;
+        }
+
+        Runnable delete = () -> {
+            try {
+                if (!medicalTestRepository.existsByBlobRef(reference)) {
+                    storeOf(reference).delete(reference);
+                }
+            } catch (Exception e) {
+                System.err.println("Could not delete blob " + reference + ": " + e.getMessage());
+            }
+        };
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    delete.run();
+                }
+            });
+        } else {
+            delete.run();
+        }
+    }
+
+    private BlobStore storeOf(String reference) {
+        for (BlobStore store : blobStores) {
+            if (reference.startsWith(store.scheme() + ":")) {
+                return store;
+            }
+        }
+        throw new IllegalArgumentException("No storage backend for reference " + reference);
+    }
+
+    private static long copy(InputStream in, OutputStream out, long length) throws IOException {
+        byte[] buffer = new byte[8192];
+        long remaining = length;
+        while (remaining > 0) {
+            int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (read == -1) {
+                break;
+            }
+            out.write(buffer, 0, read);
+            remaining -= read;
+        }
+        return length - remaining;
+    }
+
+    private static SecretKey key() throws IOException {
+        if (EncryptionConfig.secretKey == null) {
+            throw new IOException("Cheia AES lipseste din environment");
+        }
+        return EncryptionConfig.secretKey;
+    }
+
+    // Version 0 marks chunked blobs from before the header carried the version; like the
+    // whole-file ones they were written with the baseline key
+    private static SecretKey keyOf(int keyVersion) throws IOException {
+        int version = keyVersion == 0 ? EncryptionConfig.baselineKeyVersion : keyVersion;
+        SecretKey key = EncryptionConfig.keysByVersion.get(version);
+        if (key == null) {
+            throw new IOException("Unknown document key version " + version);
+        }
+        return key;
+    }
+
+    private static Cipher legacyCipher() throws IOException {
+        try {
+            Cipher cipher = Cipher.getInstance(LEGACY_ALGORITHM);
+            cipher.init(Cipher.DECRYPT_MODE, keyOf(EncryptionConfig.baselineKeyVersion));
+            return cipher;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Eroare la initializarea decriptarii documentului", e);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.vita.vitacheck.storage;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+// A blob lives at <root>/<aa>/<bb>/<name>, the name being 64 random hex digits. Blobs written
+// before were named by the SHA-256 of their bytes and could be shared by identical uploads;
+// every new write gets a name of its own, so deleting a blob never races with a write that
+// would have reused it.
+@Component
+public class FileSystemBlobStore implements BlobStore {
+
+    private static final Pattern NAME = Pattern.compile("[0-9a-f]{64}");
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final Path root;
+
+    public FileSystemBlobStore(@Value("${app.storage.fs.root:./data/blobs}") String root) {
+        this.root = Path.of(root).toAbsolutePath().normalize();
+    }
+
+    @Override
+    public String scheme() {
+        return "fs";
+    }
+
+    @Override
+    public String write(InputStream content) throws IOException {
+        Path tmpDir = Files.createDirectories(root.resolve("tmp"));
+        Path tmp = Files.createTempFile(tmpDir, "blob-", ".part");
+        try {
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                content.transferTo(out);
+            }
+
+            String name = randomName();
+            Path target = pathOf(name);
+            Files.createDirectories(target.getParent());
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+            return scheme() + ":" + name;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    @Override
+    public <T> T read(String reference, long offset, BlobReader<T> reader) throws IOException {
+        try (FileChannel channel = FileChannel.open(pathOf(nameOf(reference)), StandardOpenOption.READ)) {
+            channel.position(offset);
+            return reader.read(Channels.newInputStream(channel));
+        }
+    }
+
+    @Override
+    public long size(String reference) throws IOException {
+        return Files.size(pathOf(nameOf(reference)));
+    }
+
+    @Override
+    public void delete(String reference) throws IOException {
+        Files.deleteIfExists(pathOf(nameOf(reference)));
+    }
+
+    @Override
+    public List<String> list() throws IOException {
+        if (!Files.isDirectory(root)) {
+            return List.of();
+        }
+        Path tmpDir = root.resolve("tmp");
+        try (Stream<Path> files = Files.walk(root)) {
+            return files.filter(path -> !path.startsWith(tmpDir) && Files.isRegularFile(path))
+                    .map(path -> path.getFileName().toString())
+                    .filter(name -> NAME.matcher(name).matches())
+                    .map(name -> scheme() + ":" + name)
+                    .toList();
+        }
+    }
+
+    private Path pathOf(String name) {
+        return root.resolve(name.substring(0, 2)).resolve(name.substring(2, 4)).resolve(name);
+    }
+
+    private String nameOf(String reference) {
+        String name = reference.substring(scheme().length() + 1);
+        if (!NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("Invalid blob reference");
+        }
+        return name;
+    }
+
+    private static String randomName() {
+        byte[] bytes = new byte[32];
+        RANDOM.nextBytes(bytes);
+        return HexFormat.of().formatHex(bytes);
+    }
+}
@@ -0,0 +1,97 @@
+package com.vita.vitacheck.storage;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+
+// Brings documents from older releases into the chunked blob format: PDFs still stored inline
+// in medical_tests.data, and blobs that were moved out of that column before ChunkedEncryption
+// existed (no content_hash yet).
+@Component
+public class LegacyDocumentMigration {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DocumentStorageService documentStorageService;
+
+    public LegacyDocumentMigration(JdbcTemplate jdbcTemplate, DocumentStorageService documentStorageService) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.documentStorageService = documentStorageService;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrate() {
+        int moved = moveInlineDocuments();
+        int converted = convertLegacyBlobs();
+
+        if (moved + converted > 0) {
+            System.out.println("Migrated " + moved + " inline documents and " + converted + " legacy blobs");
+        }
+    }
+
+    private int moveInlineDocuments() {
+        Boolean hasLegacyColumn = jdbcTemplate.queryForObject("""
+                select exists (select 1 from information_schema.columns
+                               where table_name = 'medical_tests' and column_name = 'data')""", Boolean.class);
+        if (!Boolean.TRUE.equals(hasLegacyColumn)) {
+            return 0;
+        }
+
+        List<Long> ids = jdbcTemplate.queryForList(
+                "select id from medical_tests where data is not null and blob_ref is null", Long.class);
+        int moved = 0;
+        for (Long id : ids) {
+            try {
+                StoredDocument document = jdbcTemplate.query("select data from medical_tests where id = ?", rs -> {
+                    if (!rs.next()) {
+                        return null;
+                    }
+                    try (InputStream ciphertext = rs.getBinaryStream(1)) {
+                        return documentStorageService.storeLegacy(ciphertext);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, id);
+
+                if (document != null) {
+                    updateDocument(id, document, true);
+                    moved++;
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Could not move the document of test #" + id + ": " + e.getMessage());
+            }
+        }
+        return moved;
+    }
+
+    private int convertLegacyBlobs() {
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                "select id, blob_ref from medical_tests where blob_ref is not null and content_hash is null");
+        int converted = 0;
+        for (Map<String, Object> row : rows) {
+            Long id = ((Number) row.get("id")).longValue();
+            String oldReference = (String) row.get("blob_ref");
+            try {
+                updateDocument(id, documentStorageService.restoreLegacy(oldReference), false);
+                documentStorageService.deleteAfterCommit(oldReference);
+                converted++;
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Could not convert the document of test #" + id + ": " + e.getMessage());
+            }
+        }
+        return converted;
+    }
+
+    private void updateDocument(Long id, StoredDocument document, boolean clearInlineData) {
+        String sql = clearInlineData
+                ? "update medical_tests set blob_ref = ?, content_hash = ?, content_length = ?, data = null where id = ?"
+                : "update medical_tests set blob_ref = ?, content_hash = ?, content_length = ? where id = ?";
+        jdbcTemplate.update(sql, document.blobRef(), document.contentHash(), document.contentLength(), id);
+    }
+}
@@ -0,0 +1,76 @@
+package com.vita.vitacheck.storage;
+
+import com.vita.vitacheck.repository.MedicalTestRepository;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Deletes blobs no test points to: written for a test whose row failed to save, or left
+// behind when the process stopped in between. A blob written a moment ago may still be waiting
+// for its test row to commit, so a blob is only deleted once it was unreferenced at two sweeps
+// in a row. Blob references are never reused, so a deleted one can't be wanted by a new upload.
+@Component
+public class OrphanBlobSweeper {
+
+    private static final int BATCH_SIZE = 500;
+
+    private final List<BlobStore> blobStores;
+    private final MedicalTestRepository medicalTestRepository;
+    // Unreferenced at the previous sweep
+    private Set<String> candidates = Set.of();
+
+    public OrphanBlobSweeper(List<BlobStore> blobStores, MedicalTestRepository medicalTestRepository) {
+        this.blobStores = blobStores;
+        this.medicalTestRepository = medicalTestRepository;
+    }
+
+    @Scheduled(initialDelayString = "${app.storage.orphan-sweep-interval:1h}",
+            fixedDelayString = "${app.storage.orphan-sweep-interval:1h}")
+    public void sweep() {
+        Set<String> unreferenced = new HashSet<>();
+        int deleted = 0;
+        for (BlobStore store : blobStores) {
+            List<String> references;
+            try {
+                references = store.list();
+            } catch (Exception e) {
+                System.err.println("Could not list the " + store.scheme() + " blobs: " + e.getMessage());
+                continue;
+            }
+
+            for (int from = 0; from < references.size(); from += BATCH_SIZE) {
+                List<String> batch = references.subList(from, Math.min(from + BATCH_SIZE, references.size()));
+                Set<String> referenced = new HashSet<>(medicalTestRepository.findBlobRefsIn(batch));
+                for (String reference : batch) {
+                    if (referenced.contains(reference)) {
+                        continue;
+                    }
+                    if (!candidates.contains(reference)) {
+                        unreferenced.add(reference);
+                    } else if (delete(store, reference)) {
+                        deleted++;
+                    }
+                }
+            }
+        }
+        candidates = unreferenced;
+
+        if (deleted > 0) {
+            System.out.println("Deleted " + deleted + " orphaned blobs");
+        }
+    }
+
+    private boolean delete(BlobStore store, String reference) {
+        try {
+            store.delete(reference);
+            return true;
+        } catch (Exception e) {
+            System.err.println("Could not delete blob " + reference + ": " + e.getMessage());
+            return false;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.vita.vitacheck.storage;
+
+import org.postgresql.PGConnection;
+import org.postgresql.largeobject.LargeObject;
+import org.postgresql.largeobject.LargeObjectManager;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+// Stores each blob as a PostgreSQL large object; the reference holds its oid. Large objects
+// can only be used inside a transaction, so every call joins or opens one.
+@Component
+public class PostgresLargeObjectBlobStore implements BlobStore {
+
+    private final DataSource dataSource;
+    private final TransactionTemplate transactionTemplate;
+
+    public PostgresLargeObjectBlobStore(DataSource dataSource, PlatformTransactionManager transactionManager) {
+        this.dataSource = dataSource;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Override
+    public String scheme() {
+        return "pg";
+    }
+
+    @Override
+    public String write(InputStream content) throws IOException {
+        return inTransaction(manager -> {
+            long oid = manager.createLO(LargeObjectManager.READWRITE);
+            LargeObject largeObject = manager.open(oid, LargeObjectManager.WRITE);
+            try (OutputStream out = largeObject.getOutputStream()) {
+                content.transferTo(out);
+            }
+            return scheme() + ":" + oid;
+        });
+    }
+
+    @Override
+    public <T> T read(String reference, long offset, BlobReader<T> reader) throws IOException {
+        return inTransaction(manager -> {
+            LargeObject largeObject = manager.open(oidOf(reference), LargeObjectManager.READ);
+            try {
+                largeObject.seek64(offset, LargeObject.SEEK_SET);
+                return reader.read(largeObject.getInputStream());
+            } finally {
+                largeObject.close();
+            }
+        });
+    }
+
+    @Override
+    public long size(String reference) throws IOException {
+        return inTransaction(manager -> {
+            LargeObject largeObject = manager.open(oidOf(reference), LargeObjectManager.READ);
+            try {
+                return largeObject.size64();
+            } finally {
+                largeObject.close();
+            }
+        });
+    }
+
+    @Override
+    public void delete(String reference) throws IOException {
+        inTransaction(manager -> {
+            manager.delete(oidOf(reference));
+            return null;
+        });
+    }
+
+    // Large objects owned by the application's role; the database is the application's own
+    @Override
+    public List<String> list() throws IOException {
+        return inTransaction(manager -> {
+            List<String> references = new ArrayList<>();
+            Connection connection = DataSourceUtils.getConnection(dataSource);
+            try (Statement statement = connection.createStatement();
+                    ResultSet rows = statement.executeQuery("""
+                            select m.oid from pg_largeobject_metadata m
+                            where m.lomowner = (select r.oid from pg_roles r where r.rolname = current_user)""")) {
+                while (rows.next()) {
+                    references.add(scheme() + ":" + rows.getLong(1));
+                }
+            } finally {
+                DataSourceUtils.releaseConnection(connection, dataSource);
+            }
+            return references;
+        });
+    }
+
+    private long oidOf(String reference) {
+        return Long.parseLong(reference.substring(scheme().length() + 1));
+    }
+
+    private <T> T inTransaction(LargeObjectCallback<T> callback) throws IOException {
+        try {
+            return transactionTemplate.execute(status -> {
+                Connection connection = DataSourceUtils.getConnection(dataSource);
+                try {
+                    return callback.run(connection.unwrap(PGConnection.class).getLargeObjectAPI());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } catch (SQLException e) {
+                    throw new UncheckedIOException(new IOException(e));
+                } finally {
+                    DataSourceUtils.releaseConnection(connection, dataSource);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    @FunctionalInterface
+    private interface LargeObjectCallback<T> {
+        T run(LargeObjectManager manager) throws IOException, SQLException;
+    }
+}
@@ -0,0 +1,5 @@
+package com.vita.vitacheck.storage;
+
+// Where a document was written and what its plaintext looks like
+public record StoredDocument(String blobRef, String contentHash, long contentLength) {
+}
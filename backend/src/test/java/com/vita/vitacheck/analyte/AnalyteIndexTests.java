@@ -0,0 +1,72 @@
+package com.vita.vitacheck.analyte;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class AnalyteIndexTests {
+
+    private static AnalyteIndex index;
+
+    @BeforeAll
+    static void setUp() throws IOException {
+        index = new AnalyteIndex(new ClassPathResource("analytes.json"));
+    }
+
+    @Test
+    void exactNamesAndSynonyms() {
+        assertEquals(1, index.canonicalId("Hemoglobina"));
+        assertEquals(1, index.canonicalId("HGB"));
+        assertEquals(21, index.canonicalId("GLICEMIE"));
+        assertEquals(25, index.canonicalId("LDL-colesterol"));
+        assertEquals(28, index.canonicalId("  Uree   serică "));
+    }
+
+    @Test
+    void qualifierAfterASynonym() {
+        assertEquals(1, index.canonicalId("Hemoglobina (HGB)"));
+        assertEquals(21, index.canonicalId("Glicemie, ser"));
+        assertEquals(27, index.canonicalId("Creatinina: metoda Jaffe"));
+    }
+
+    @Test
+    void percentAndCountStayApart() {
+        assertEquals(12, index.canonicalId("Limfocite"));
+        assertEquals(12, index.canonicalId("Limfocite #"));
+        assertEquals(13, index.canonicalId("Limfocite %"));
+        assertEquals(13, index.canonicalId("Limfocite % (LYM%)"));
+        assertNotEquals(12, index.canonicalId("Limfocite (LYM%)"));
+        // One edit from both, but only one of them has the "%"
+        assertEquals(11, index.canonicalId("Neutrofle %"));
+        assertEquals(10, index.canonicalId("Neutrofle"));
+    }
+
+    @Test
+    void misspellingsWithinTheEditBound() {
+        assertEquals(1, index.canonicalId("Hemoglobinna"));
+        assertEquals(27, index.canonicalId("Creatinnina"));
+        assertEquals(23, index.canonicalId("Colesterol totl"));
+    }
+
+    @Test
+    void ratiosAreNotTheirFirstAnalyte() {
+        assertNull(index.canonicalId("Colesterol total/HDL"));
+        assertNull(index.canonicalId("LDL/HDL"));
+        assertNull(index.canonicalId("Uree/Creatinina"));
+        assertNull(index.canonicalId("HDL*100"));
+    }
+
+    @Test
+    void unknownNames() {
+        // Two edits from "Vitamina B12", but a different vitamin
+        assertNull(index.canonicalId("Vitamina B6"));
+        assertNull(index.canonicalId("Necunoscut"));
+        assertNull(index.canonicalId(null));
+    }
+}
@@ -0,0 +1,62 @@
+package com.vita.vitacheck.analyte;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UnitCatalogTests {
+
+    private static final int LEUCOCITE = 4;
+    private static final int CALCIU = 41;
+    private static final int MAGNEZIU = 43;
+    private static final int SODIU = 44;
+
+    private static UnitCatalog catalog;
+
+    @BeforeAll
+    static void setUp() throws IOException {
+        catalog = new UnitCatalog(new ClassPathResource("units.json"));
+    }
+
+    @Test
+    void gigaPerLiterIsNotGramsPerLiter() {
+        // Reticulocite is not in the catalog, so only the unit decides
+        assertConversion("mii/µL", 1.0, catalog.normalize(null, "G/L"));
+        assertConversion("mil/µL", 1.0, catalog.normalize(null, "T/L"));
+        assertConversion("g/dL", 0.1, catalog.normalize(null, "g/L"));
+        assertConversion("mii/µL", 1.0, catalog.normalize(LEUCOCITE, "G/L"));
+    }
+
+    @Test
+    void otherLettersStillIgnoreCase() {
+        assertConversion("mg/dL", 1.0, catalog.normalize(null, "MG/DL"));
+        assertConversion("mii/µL", 1.0, catalog.normalize(LEUCOCITE, "10^3/UL"));
+    }
+
+    @Test
+    void milliequivalentsDependOnTheCharge() {
+        assertEquals(5.01, catalog.normalize(CALCIU, "mEq/L").apply(2.5));
+        assertEquals(10.02, catalog.normalize(CALCIU, "mmol/L").apply(2.5));
+        assertEquals(2.431, catalog.normalize(MAGNEZIU, "mEq/L").apply(2.0));
+        assertConversion("mmol/L", 1.0, catalog.normalize(SODIU, "mEq/L"));
+        // Without the analyte the charge is unknown, so the value is kept as written
+        assertConversion("mEq/L", 1.0, catalog.normalize(null, "mEq/L"));
+    }
+
+    @Test
+    void factorBetweenUnitsOfAnAnalyte() {
+        assertEquals(4.008, catalog.factor(CALCIU, "mmol/L", "mg/dL").getAsDouble(), 1e-9);
+        assertEquals(0.5, catalog.factor(CALCIU, "mEq/L", "mmol/L").getAsDouble(), 1e-9);
+        assertTrue(catalog.factor(null, "mEq/L", "mmol/L").isEmpty());
+    }
+
+    private static void assertConversion(String unit, double factor, UnitCatalog.Conversion conversion) {
+        assertEquals(unit, conversion.unit());
+        assertEquals(factor, conversion.factor(), 1e-9);
+    }
+}
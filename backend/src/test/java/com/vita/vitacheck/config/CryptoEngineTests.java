@@ -0,0 +1,144 @@
+package com.vita.vitacheck.config;
+
+import com.vita.vitacheck.model.AnalyteMeasurement;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CryptoEngineTests {
+
+    private static final SecretKeySpec KEY_1 = key(1);
+    private static final SecretKeySpec KEY_2 = key(2);
+
+    @BeforeEach
+    void useKeyOne() {
+        EncryptionConfig.keysByVersion.clear();
+        EncryptionConfig.keysByVersion.put(1, KEY_1);
+        EncryptionConfig.secretKey = KEY_1;
+        EncryptionConfig.keyVersion = 1;
+        EncryptionConfig.baselineKeyVersion = 1;
+    }
+
+    @Test
+    void encryptedValueRoundTrips() throws Exception {
+        String encrypted = CryptoEngine.encrypt("Glicemie");
+
+        assertTrue(encrypted.startsWith("v1:"));
+        assertEquals("Glicemie", CryptoEngine.decryptToString(encrypted));
+    }
+
+    @Test
+    void valueOfThePreviousKeyIsReadableAfterRotation() throws Exception {
+        String encrypted = CryptoEngine.encrypt("Glicemie");
+
+        rotateToKeyTwo();
+
+        assertTrue(CryptoEngine.encrypt("Glicemie").startsWith("v2:"));
+        assertEquals("Glicemie", CryptoEngine.decryptToString(encrypted));
+    }
+
+    @Test
+    void legacyValueIsReadableAfterRotation() throws Exception {
+        String legacy = legacyEcb("1850101123456", KEY_1);
+
+        rotateToKeyTwo();
+
+        assertEquals("1850101123456", CryptoEngine.decryptToString(legacy));
+    }
+
+    @Test
+    void deterministicValueDoesNotChangeOnRotation() throws Exception {
+        String before = CryptoEngine.encryptDeterministic("hemoglobina");
+
+        rotateToKeyTwo();
+
+        assertEquals(before, CryptoEngine.encryptDeterministic("hemoglobina"));
+        assertEquals("hemoglobina", CryptoEngine.decryptToString(before));
+    }
+
+    @Test
+    void unknownKeyVersionFails() throws Exception {
+        String encrypted = CryptoEngine.encrypt("Glicemie").replaceFirst("^v1:", "v7:");
+
+        assertThrows(GeneralSecurityException.class, () -> CryptoEngine.decrypt(encrypted));
+    }
+
+    @Test
+    void missingBaselineKeyFails() {
+        EncryptionConfig.baselineKeyVersion = 3;
+
+        assertThrows(GeneralSecurityException.class, () -> CryptoEngine.encryptDeterministic("hemoglobina"));
+    }
+
+    @Test
+    void convertersRoundTrip() {
+        StringEncryptionConverter converter = new StringEncryptionConverter();
+        DeterministicStringEncryptionConverter deterministic = new DeterministicStringEncryptionConverter();
+
+        assertEquals("Synevo", converter.convertToEntityAttribute(converter.convertToDatabaseColumn("Synevo")));
+        assertEquals("tsh", deterministic.convertToEntityAttribute(deterministic.convertToDatabaseColumn("tsh")));
+    }
+
+    @Test
+    void convertersFailInsteadOfReturningCiphertext() throws Exception {
+        String encrypted = CryptoEngine.encrypt("Glicemie");
+        EncryptionConfig.keysByVersion.put(1, KEY_2);
+
+        assertThrows(IllegalStateException.class,
+                () -> new StringEncryptionConverter().convertToEntityAttribute(encrypted));
+        assertThrows(IllegalStateException.class,
+                () -> new DeterministicStringEncryptionConverter().convertToEntityAttribute("bm90LWNpcGhlcnRleHQ="));
+        assertThrows(IllegalStateException.class,
+                () -> new LimitsEncryptionConverter().convertToEntityAttribute(encrypted));
+        assertThrows(IllegalStateException.class,
+                () -> new MeasurementsEncryptionConverter().convertToEntityAttribute(encrypted));
+    }
+
+    @Test
+    void measurementsAreAlwaysAnEditableList() {
+        MeasurementsEncryptionConverter converter = new MeasurementsEncryptionConverter();
+        AnalyteMeasurement measurement = new AnalyteMeasurement(7L, "buletin.pdf", "15-03-2024",
+                LocalDate.of(2024, 3, 15), null, 92.0, "mg/dL", 70.0, 100.0, null);
+
+        List<AnalyteMeasurement> stored = converter.convertToEntityAttribute(
+                converter.convertToDatabaseColumn(List.of(measurement)));
+        List<AnalyteMeasurement> empty = converter.convertToEntityAttribute(null);
+
+        assertEquals(List.of(measurement), stored);
+        assertTrue(stored.removeIf(m -> m.medicalTestId() == 7L));
+        assertTrue(empty.add(measurement));
+    }
+
+    private static void rotateToKeyTwo() {
+        EncryptionConfig.keysByVersion.put(2, KEY_2);
+        EncryptionConfig.secretKey = KEY_2;
+        EncryptionConfig.keyVersion = 2;
+    }
+
+    // What values looked like before the version header existed
+    private static String legacyEcb(String plaintext, SecretKeySpec key) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
+        cipher.init(Cipher.ENCRYPT_MODE, key);
+        return Base64.getEncoder().encodeToString(cipher.doFinal(plaintext.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static SecretKeySpec key(int seed) {
+        byte[] bytes = new byte[32];
+        Arrays.fill(bytes, (byte) seed);
+        return new SecretKeySpec(bytes, "AES");
+    }
+}
@@ -0,0 +1,171 @@
+package com.vita.vitacheck.controller;
+
+import com.vita.vitacheck.dto.AnalysisJobResponse;
+import com.vita.vitacheck.model.MedicalTest;
+import com.vita.vitacheck.model.User;
+import com.vita.vitacheck.service.AnalysisJobService;
+import com.vita.vitacheck.service.MedicalTestService;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MedicalTestControllerTests {
+
+    private static final byte[] CONTENT = "%PDF-1.7 buletin de analize".getBytes(StandardCharsets.US_ASCII);
+    private static final String ETAG = "\"abc123\"";
+
+    private final MedicalTestService medicalTestService = mock(MedicalTestService.class);
+    private final AnalysisJobService analysisJobService = mock(AnalysisJobService.class);
+    private final MedicalTestController controller = new MedicalTestController(medicalTestService, null, null,
+            analysisJobService, null);
+    private final User user = User.builder().email("pacient@vitacheck.ro").build();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        MedicalTest test = MedicalTest.builder()
+                .id(1L)
+                .user(user)
+                .fileName("buletin.pdf")
+                .fileType("application/pdf")
+                .blobRef("fs:1")
+                .contentHash("abc123")
+                .contentLength((long) CONTENT.length)
+                .build();
+        when(medicalTestService.getTestFile(1L, user)).thenReturn(test);
+        doAnswer(invocation -> {
+            invocation.<OutputStream>getArgument(1).write(CONTENT);
+            return null;
+        }).when(medicalTestService).writeTestFile(eq(test), any());
+        doAnswer(invocation -> {
+            int offset = (int) invocation.<Long>getArgument(2).longValue();
+            int length = (int) invocation.<Long>getArgument(3).longValue();
+            invocation.<OutputStream>getArgument(1).write(CONTENT, offset, length);
+            return null;
+        }).when(medicalTestService).writeTestFile(eq(test), any(), anyLong(), anyLong());
+    }
+
+    @Test
+    void sendsTheWholeFileWithItsETag() throws IOException {
+        ResponseEntity<StreamingResponseBody> response = download(new HttpHeaders());
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(ETAG, response.getHeaders().getETag());
+        assertEquals("bytes", response.getHeaders().getFirst(HttpHeaders.ACCEPT_RANGES));
+        assertEquals(CONTENT.length, response.getHeaders().getContentLength());
+        assertArrayEquals(CONTENT, body(response));
+    }
+
+    @Test
+    void matchingIfNoneMatchIsNotModified() throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfNoneMatch(ETAG);
+
+        ResponseEntity<StreamingResponseBody> response = download(headers);
+
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertNull(response.getBody());
+        verify(medicalTestService, never()).writeTestFile(any(), any());
+    }
+
+    @Test
+    void singleRangeIsPartialContent() throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RANGE, "bytes=4-10");
+
+        ResponseEntity<StreamingResponseBody> response = download(headers);
+
+        assertEquals(HttpStatus.PARTIAL_CONTENT, response.getStatusCode());
+        assertEquals("bytes 4-10/" + CONTENT.length, response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+        assertEquals(7, response.getHeaders().getContentLength());
+        assertArrayEquals(Arrays.copyOfRange(CONTENT, 4, 11), body(response));
+    }
+
+    @Test
+    void suffixRangeIsTheEndOfTheFile() throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RANGE, "bytes=-5");
+
+        ResponseEntity<StreamingResponseBody> response = download(headers);
+
+        assertEquals(HttpStatus.PARTIAL_CONTENT, response.getStatusCode());
+        assertArrayEquals(Arrays.copyOfRange(CONTENT, CONTENT.length - 5, CONTENT.length), body(response));
+    }
+
+    @Test
+    void rangeBeyondTheFileIsNotSatisfiable() throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RANGE, "bytes=1000-2000");
+
+        ResponseEntity<StreamingResponseBody> response = download(headers);
+
+        assertEquals(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE, response.getStatusCode());
+        assertEquals("bytes */" + CONTENT.length, response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+    }
+
+    @Test
+    void rangeUnderStaleIfRangeSendsTheWholeFile() throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RANGE, "bytes=4-10");
+        headers.set(HttpHeaders.IF_RANGE, "\"stale\"");
+
+        ResponseEntity<StreamingResponseBody> response = download(headers);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertArrayEquals(CONTENT, body(response));
+    }
+
+    @Test
+    void rangeUnderCurrentIfRangeIsPartialContent() throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RANGE, "bytes=0-3");
+        headers.set(HttpHeaders.IF_RANGE, ETAG);
+
+        ResponseEntity<StreamingResponseBody> response = download(headers);
+
+        assertEquals(HttpStatus.PARTIAL_CONTENT, response.getStatusCode());
+        assertArrayEquals(Arrays.copyOfRange(CONTENT, 0, 4), body(response));
+    }
+
+    @Test
+    void fullAnalysisQueueIsServiceUnavailable() {
+        when(analysisJobService.enqueue(any())).thenThrow(new AnalysisJobService.QueueFullException(Duration.ofSeconds(30)));
+
+        ResponseEntity<AnalysisJobResponse> response = controller.analyzeTest(user, 1L);
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+        assertEquals("30", response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+    }
+
+    private ResponseEntity<StreamingResponseBody> download(HttpHeaders headers) {
+        return controller.downloadTest(user, 1L, headers);
+    }
+
+    private static byte[] body(ResponseEntity<StreamingResponseBody> response) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,55 @@
+package com.vita.vitacheck.parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class CollectionDateParserTests {
+
+    private static final LocalDate TODAY = LocalDate.of(2026, 10, 18);
+
+    @Test
+    void fullDates() {
+        assertEquals(LocalDate.of(2024, 3, 15), CollectionDateParser.parse("15-03-2024", TODAY));
+        assertEquals(LocalDate.of(2024, 3, 15), CollectionDateParser.parse("2024-03-15T08:30:00", TODAY));
+        assertEquals(LocalDate.of(2024, 3, 5), CollectionDateParser.parse("Recoltat: 5.3.2024 08:30", TODAY));
+        assertEquals(LocalDate.of(2023, 11, 2), CollectionDateParser.parse("02 noiembrie 2023", TODAY));
+        assertEquals(LocalDate.of(2023, 1, 20), CollectionDateParser.parse("20 Ian. 2023", TODAY));
+    }
+
+    @Test
+    void yearFirstWithAnySeparator() {
+        assertEquals(LocalDate.of(2024, 3, 12), CollectionDateParser.parse("2024/03/12", TODAY));
+        assertEquals(LocalDate.of(2024, 3, 12), CollectionDateParser.parse("2024.03.12", TODAY));
+        assertEquals(LocalDate.of(2024, 3, 12), CollectionDateParser.parse("Data: 2024.3.12 07:45", TODAY));
+    }
+
+    @Test
+    void daysAreNotTakenFromInsideLongerNumbers() {
+        assertNull(CollectionDateParser.parse("1203/04/2024", TODAY));
+        assertNull(CollectionDateParser.parse("115 martie 2024", TODAY));
+    }
+
+    @Test
+    void twoDigitYearsUpToAYearAheadAreThisCentury() {
+        assertEquals(LocalDate.of(2024, 3, 15), CollectionDateParser.parse("15/03/24", TODAY));
+        assertEquals(LocalDate.of(2027, 10, 18), CollectionDateParser.parse("18.10.27", TODAY));
+    }
+
+    @Test
+    void twoDigitYearsFurtherAheadAreTheLastCentury() {
+        assertEquals(LocalDate.of(1998, 4, 3), CollectionDateParser.parse("03.04.98", TODAY));
+        assertEquals(LocalDate.of(1927, 10, 19), CollectionDateParser.parse("19.10.27", TODAY));
+    }
+
+    @Test
+    void noValidDate() {
+        assertNull(CollectionDateParser.parse("31-02-2024", TODAY));
+        assertNull(CollectionDateParser.parse("15 foo 2024", TODAY));
+        assertNull(CollectionDateParser.parse("nedeterminat", TODAY));
+        assertNull(CollectionDateParser.parse(null, TODAY));
+    }
+}
@@ -0,0 +1,150 @@
+package com.vita.vitacheck.parser;
+
+import com.vita.vitacheck.analyte.AnalyteIndex;
+import com.vita.vitacheck.dto.MedicalTestItemResponse;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Fixtures in src/test/resources/parser hold the lines PdfTextExtractionService produces for one
+// bulletin layout: one PDF line per row, cells separated by " | ", "--- page N" between pages
+class TableLabReportParserTests {
+
+    private static SynevoReportParser synevo;
+    private static MedLifeReportParser medLife;
+
+    @BeforeAll
+    static void setUp() throws IOException {
+        AnalyteIndex analyteIndex = new AnalyteIndex(new ClassPathResource("analytes.json"));
+        synevo = new SynevoReportParser(analyteIndex);
+        medLife = new MedLifeReportParser(analyteIndex);
+    }
+
+    @Test
+    void synevoBulletinIsFullyUnderstood() throws IOException {
+        List<PdfTextLine> lines = fixture("synevo.txt");
+
+        assertTrue(synevo.claims(lines));
+        assertFalse(medLife.claims(lines));
+
+        LabParseResult result = synevo.parse(lines);
+        MedicalTestItemResponse extraction = result.extraction();
+        assertEquals(1.0, result.confidence());
+        assertEquals("Synevo", extraction.getLaboratory());
+        assertEquals("12-03-2024", extraction.getCollection_date());
+        assertEquals(List.of("Hemoglobina", "Hematocrit %", "Leucocite", "Limfocite %", "Glicemie",
+                "Colesterol total", "Proteina C reactiva", "Antigen HBs"), names(extraction));
+
+        MedicalTestItemResponse.TestItemDto hemoglobin = item(extraction, "Hemoglobina");
+        assertEquals(14.2, hemoglobin.getNumeric_value());
+        assertEquals("g/dL", hemoglobin.getUm());
+        assertEquals(13.2, hemoglobin.getMin_reference());
+        assertEquals(17.3, hemoglobin.getMax_reference());
+        assertEquals("Normal", hemoglobin.getFlag());
+
+        assertEquals(11.4, item(extraction, "Leucocite").getNumeric_value());
+        assertEquals("Crescut", item(extraction, "Leucocite").getFlag());
+        assertEquals(200.0, item(extraction, "Colesterol total").getMax_reference());
+        assertNull(item(extraction, "Colesterol total").getMin_reference());
+        assertEquals("Negativ", item(extraction, "Antigen HBs").getString_value());
+    }
+
+    @Test
+    void medLifeBulletinIsFullyUnderstood() throws IOException {
+        List<PdfTextLine> lines = fixture("medlife.txt");
+
+        // The partner laboratory is named below the header
+        assertTrue(medLife.claims(lines));
+        assertFalse(synevo.claims(lines));
+
+        LabParseResult result = medLife.parse(lines);
+        MedicalTestItemResponse extraction = result.extraction();
+        assertEquals(1.0, result.confidence());
+        assertEquals("MedLife", extraction.getLaboratory());
+        assertEquals("05-11-2023", extraction.getCollection_date());
+        assertEquals(12, extraction.getRezults().size());
+        assertEquals("Deficit", item(extraction, "Feritina").getFlag());
+        assertEquals(40.0, item(extraction, "HDL colesterol").getMin_reference());
+        assertEquals("U/L", item(extraction, "ALT").getUm());
+    }
+
+    @Test
+    void flaggedAndCensoredValuesLowerTheConfidence() throws IOException {
+        LabParseResult result = synevo.parse(fixture("synevo-flagged.txt"));
+
+        // Glicemie and Uree out of four result rows
+        assertEquals(0.5, result.confidence());
+        assertEquals(List.of("Glicemie", "Uree"), names(result.extraction()));
+    }
+
+    @Test
+    void bareQualitativeRowsOfKnownAnalytesAreResults() throws IOException {
+        LabParseResult result = synevo.parse(fixture("synevo-qualitative.txt"));
+
+        // "Pacient: ..." and "Medic trimitator" are not analytes, so they are neither items nor candidates
+        assertEquals(1.0, result.confidence());
+        assertEquals(List.of("Glicemie", "Grup sanguin", "Ag HBs"), names(result.extraction()));
+        assertEquals("A II", item(result.extraction(), "Grup sanguin").getString_value());
+        assertEquals("Negativ", item(result.extraction(), "Ag HBs").getString_value());
+        assertNull(item(result.extraction(), "Ag HBs").getText_reference());
+    }
+
+    @Test
+    void bulletinWithoutADateIsNotTrusted() throws IOException {
+        List<PdfTextLine> lines = fixture("synevo.txt").stream()
+                .filter(line -> !line.text().startsWith("Data recoltare"))
+                .toList();
+
+        assertEquals(0.0, synevo.parse(lines).confidence());
+    }
+
+    private static List<String> names(MedicalTestItemResponse extraction) {
+        return extraction.getRezults().stream().map(MedicalTestItemResponse.TestItemDto::getTest_name).toList();
+    }
+
+    private static MedicalTestItemResponse.TestItemDto item(MedicalTestItemResponse extraction, String name) {
+        return extraction.getRezults().stream()
+                .filter(item -> item.getTest_name().equals(name))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private static List<PdfTextLine> fixture(String name) throws IOException {
+        String text;
+        try (InputStream in = TableLabReportParserTests.class.getResourceAsStream("/parser/" + name)) {
+            text = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+
+        List<PdfTextLine> lines = new ArrayList<>();
+        int page = 1;
+        for (String row : text.split("\n")) {
+            if (row.isBlank() || row.startsWith("#")) {
+                continue;
+            }
+            if (row.startsWith("--- page ")) {
+                page = Integer.parseInt(row.substring("--- page ".length()).trim());
+                continue;
+            }
+            List<PdfTextLine.Cell> cells = new ArrayList<>();
+            float x = 0;
+            for (String cell : row.split(" \\| ")) {
+                cells.add(new PdfTextLine.Cell(cell.trim(), x, x + 10));
+                x += 20;
+            }
+            lines.add(new PdfTextLine(page, lines.size(), cells));
+        }
+        return lines;
+    }
+}
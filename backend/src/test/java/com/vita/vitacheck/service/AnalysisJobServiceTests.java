@@ -0,0 +1,157 @@
+package com.vita.vitacheck.service;
+
+import com.vita.vitacheck.dto.AnalysisJobResponse;
+import com.vita.vitacheck.model.AnalysisJob;
+import com.vita.vitacheck.model.AnalysisJobStatus;
+import com.vita.vitacheck.model.MedicalTest;
+import com.vita.vitacheck.model.User;
+import com.vita.vitacheck.repository.AnalysisJobRepository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AnalysisJobServiceTests {
+
+    private final AnalysisJobRepository analysisJobRepository = mock(AnalysisJobRepository.class);
+    private final ExecutorService analysisExecutor = mock(ExecutorService.class);
+    private final AnalysisJobService service = new AnalysisJobService(analysisJobRepository,
+            mock(MedicalTestService.class), analysisExecutor);
+    private final MedicalTest test = MedicalTest.builder().id(7L).user(User.builder().id(1L).build()).build();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(service, "perUserLimit", 2);
+        ReflectionTestUtils.setField(service, "queueFullRetryAfter", Duration.ofSeconds(30));
+    }
+
+    @Test
+    void concurrentEnqueueReturnsTheJobThatWon() {
+        AnalysisJob winner = AnalysisJob.builder().id(11L).medicalTest(test).status(AnalysisJobStatus.QUEUED).build();
+        when(analysisJobRepository.findFirstByMedicalTest_IdAndStatusIn(eq(7L), anyCollection()))
+                .thenReturn(Optional.empty())
+                .thenReturn(Optional.of(winner));
+        when(analysisJobRepository.save(any(AnalysisJob.class))).thenThrow(new DataIntegrityViolationException("uk_analysis_jobs_active_test"));
+
+        AnalysisJobResponse response = service.enqueue(test);
+
+        assertEquals(11L, response.getJobId());
+        assertEquals(AnalysisJobStatus.QUEUED, response.getStatus());
+        verify(analysisExecutor, never()).execute(any(Runnable.class));
+    }
+
+    @Test
+    void backlogLargerThanTheQueueIsResumedAsJobsFinish() throws Exception {
+        ManualExecutor executor = new ManualExecutor(2);
+        MedicalTestService medicalTestService = mock(MedicalTestService.class);
+        AnalysisJobService service = new AnalysisJobService(analysisJobRepository, medicalTestService, executor);
+        ReflectionTestUtils.setField(service, "perUserLimit", 2);
+
+        Map<Long, AnalysisJob> jobs = new LinkedHashMap<>();
+        for (long id = 1; id <= 5; id++) {
+            MedicalTest owned = MedicalTest.builder().id(100 + id).user(User.builder().id(id).build()).build();
+            jobs.put(id, AnalysisJob.builder().id(id).medicalTest(owned).status(AnalysisJobStatus.RUNNING).build());
+        }
+        when(analysisJobRepository.findByStatusInOrderByCreatedAtAsc(anyCollection()))
+                .thenReturn(List.copyOf(jobs.values()));
+        when(analysisJobRepository.findById(any(Long.class)))
+                .thenAnswer(invocation -> Optional.ofNullable(jobs.get(invocation.<Long>getArgument(0))));
+        when(analysisJobRepository.save(any(AnalysisJob.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        service.resumePendingJobs();
+
+        assertEquals(2, executor.tasks.size());
+        assertTrue(jobs.values().stream().allMatch(job -> job.getStatus() == AnalysisJobStatus.QUEUED));
+
+        while (!executor.tasks.isEmpty()) {
+            executor.tasks.poll().run();
+        }
+        for (long id = 1; id <= 5; id++) {
+            verify(medicalTestService).analyzeTest(100 + id);
+            assertEquals(AnalysisJobStatus.DONE, jobs.get(id).getStatus());
+        }
+    }
+
+    @Test
+    void fullQueueTellsWhenToRetry() {
+        when(analysisJobRepository.findFirstByMedicalTest_IdAndStatusIn(eq(7L), anyCollection()))
+                .thenReturn(Optional.empty());
+        when(analysisJobRepository.save(any(AnalysisJob.class))).thenAnswer(invocation -> {
+            AnalysisJob job = invocation.getArgument(0);
+            job.setId(12L);
+            return job;
+        });
+        doThrow(new RejectedExecutionException()).when(analysisExecutor).execute(any(Runnable.class));
+
+        AnalysisJobService.QueueFullException e = assertThrows(AnalysisJobService.QueueFullException.class,
+                () -> service.enqueue(test));
+        assertEquals(Duration.ofSeconds(30), e.getRetryAfter());
+    }
+
+    // Holds up to capacity tasks until the test runs them, and rejects the rest like a full pool
+    private static final class ManualExecutor extends AbstractExecutorService {
+
+        private final int capacity;
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+
+        ManualExecutor(int capacity) {
+            this.capacity = capacity;
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            if (tasks.size() >= capacity) {
+                throw new RejectedExecutionException();
+            }
+            tasks.add(task);
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return List.of();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.vita.vitacheck.service;
+
+import com.vita.vitacheck.dto.BatchUploadResult;
+import com.vita.vitacheck.model.MedicalTest;
+import com.vita.vitacheck.model.User;
+import com.vita.vitacheck.storage.DocumentIngestPipeline;
+import com.vita.vitacheck.storage.DocumentStorageService;
+import com.vita.vitacheck.storage.StoredDocument;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BatchUploadServiceTests {
+
+    private static final byte[] PDF = "%PDF-1.7 buletin".getBytes(StandardCharsets.US_ASCII);
+
+    private final MedicalTestService medicalTestService = mock(MedicalTestService.class);
+    private final DocumentIngestPipeline documentIngestPipeline = mock(DocumentIngestPipeline.class);
+    private final User user = User.builder().id(1L).email("pacient@vitacheck.ro").build();
+    private final AtomicLong ids = new AtomicLong();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        // Like DocumentIngestPipeline: a rejected entry is only read as far as the sniff window
+        when(documentIngestPipeline.ingestPdf(any())).thenAnswer(invocation -> {
+            InputStream upload = invocation.getArgument(0);
+            byte[] head = upload.readNBytes(1024);
+            if (head.length < 5 || !Arrays.equals(head, 0, 5, PDF, 0, 5)) {
+                throw new IllegalArgumentException("Only PDF files can be uploaded");
+            }
+            byte[] content = upload.readAllBytes();
+            return new StoredDocument("fs:" + ids.incrementAndGet(), String.valueOf(31 * Arrays.hashCode(head) + Arrays.hashCode(content)),
+                    head.length + content.length);
+        });
+        when(medicalTestService.storeTest(any(), any(), any(), any()))
+                .thenAnswer(invocation -> MedicalTest.builder().id(ids.incrementAndGet()).build());
+    }
+
+    @Test
+    void queuesThePdfsOfAnArchive() throws IOException {
+        byte[] archive = zip(new Entry("a.pdf", PDF), new Entry("__MACOSX/._a.pdf", new byte[10]),
+                new Entry("b.pdf", "%PDF-1.4 alt buletin".getBytes(StandardCharsets.US_ASCII)));
+
+        List<BatchUploadResult> results = service(DataSize.ofMegabytes(1), 100).upload(List.of(upload(archive)), user);
+
+        assertEquals(List.of("a.pdf", "b.pdf"), results.stream().map(BatchUploadResult::getFileName).toList());
+        assertTrue(results.stream().allMatch(r -> r.getStatus() == BatchUploadResult.Status.QUEUED));
+    }
+
+    @Test
+    void skippedEntriesCountAgainstTheInflatedSize() throws IOException {
+        // Not a PDF, so only its first bytes are read and getNextEntry inflates the rest
+        byte[] archive = zip(new Entry("bomb.pdf", new byte[4 * 1024 * 1024]), new Entry("a.pdf", PDF));
+
+        List<BatchUploadResult> results = service(DataSize.ofMegabytes(1), 100).upload(List.of(upload(archive)), user);
+
+        BatchUploadResult last = results.get(results.size() - 1);
+        assertEquals(BatchUploadResult.Status.REJECTED, last.getStatus());
+        assertTrue(last.getErrorMessage().startsWith("The archive unpacks to more than"));
+        assertTrue(results.stream().noneMatch(r -> r.getStatus() == BatchUploadResult.Status.QUEUED));
+    }
+
+    @Test
+    void archiveWithTooManyEntriesIsCut() throws IOException {
+        Entry[] entries = new Entry[10];
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = new Entry("dir" + i + "/", new byte[0]);
+        }
+
+        List<BatchUploadResult> results = service(DataSize.ofMegabytes(1), 5).upload(List.of(upload(zip(entries))), user);
+
+        assertEquals(1, results.size());
+        assertEquals(BatchUploadResult.Status.REJECTED, results.get(0).getStatus());
+        assertTrue(results.get(0).getErrorMessage().startsWith("The archive has more than 5 entries"));
+    }
+
+    private BatchUploadService service(DataSize maxInflated, int maxEntries) {
+        return new BatchUploadService(medicalTestService, mock(AnalysisJobService.class), documentIngestPipeline,
+                mock(DocumentStorageService.class), 200, DataSize.ofMegabytes(100), maxInflated, maxEntries);
+    }
+
+    private static MockMultipartFile upload(byte[] content) {
+        return new MockMultipartFile("files", "buletine.zip", "application/zip", content);
+    }
+
+    private record Entry(String name, byte[] content) {
+    }
+
+    private static byte[] zip(Entry... entries) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (Entry entry : entries) {
+                zip.putNextEntry(new ZipEntry(entry.name()));
+                zip.write(entry.content());
+                zip.closeEntry();
+            }
+        }
+        return out.toByteArray();
+    }
+}
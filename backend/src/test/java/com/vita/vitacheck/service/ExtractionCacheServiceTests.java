@@ -0,0 +1,59 @@
+package com.vita.vitacheck.service;
+
+import com.vita.vitacheck.dto.MedicalTestItemResponse;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Needs the database, like VitaCheckApplicationTests
+@SpringBootTest
+class ExtractionCacheServiceTests {
+
+    @Autowired
+    private ExtractionCacheService extractionCacheService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void storingTheSameKeyTwiceKeepsTheFirstEntry() {
+        String hash = randomHash();
+
+        extractionCacheService.store(hash, extraction("Synevo"));
+        assertDoesNotThrow(() -> extractionCacheService.store(hash, extraction("MedLife")));
+
+        assertEquals("Synevo", extractionCacheService.lookup(hash).orElseThrow().getLaboratory());
+    }
+
+    // As in analyzeTest: the duplicate must not mark the surrounding transaction rollback-only
+    @Test
+    void duplicateStoreInsideATransactionLetsItCommit() {
+        String hash = randomHash();
+        extractionCacheService.store(hash, extraction("Synevo"));
+
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        assertDoesNotThrow(() -> transaction.executeWithoutResult(
+                status -> extractionCacheService.store(hash, extraction("MedLife"))));
+
+        assertEquals("Synevo", extractionCacheService.lookup(hash).orElseThrow().getLaboratory());
+    }
+
+    private static String randomHash() {
+        return ExtractionCacheService.sha256Hex(UUID.randomUUID().toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static MedicalTestItemResponse extraction(String laboratory) {
+        MedicalTestItemResponse response = new MedicalTestItemResponse();
+        response.setLaboratory(laboratory);
+        return response;
+    }
+}
@@ -0,0 +1,109 @@
+package com.vita.vitacheck.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.stubbing.OngoingStubbing;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MedicalExtractionServiceTests {
+
+    private final RestTemplate restTemplate = mock(RestTemplate.class);
+    private final GeminiKeyScheduler geminiKeyScheduler = mock(GeminiKeyScheduler.class);
+    private final PdfTextExtractionService pdfTextExtractionService = mock(PdfTextExtractionService.class);
+    private final GeminiKeyScheduler.Lease firstKey = lease(0);
+    private final GeminiKeyScheduler.Lease secondKey = lease(1);
+
+    @BeforeEach
+    void setUp() throws InterruptedException {
+        when(pdfTextExtractionService.extractTextLayer(any())).thenReturn(Optional.of("Glicemie 92 mg/dL"));
+        when(geminiKeyScheduler.acquire(anyLong())).thenReturn(firstKey, secondKey, secondKey, secondKey);
+    }
+
+    @Test
+    void timeoutIsRetriedOnAnotherKey() throws Exception {
+        whenGeminiIsCalled()
+                .thenThrow(new ResourceAccessException("Read timed out", new SocketTimeoutException()))
+                .thenReturn("{\"rezults\": []}");
+
+        assertEquals("{\"rezults\": []}", service(10, Duration.ofMinutes(10)).extractDataFromPdf(new byte[0]));
+        verify(firstKey).failed();
+        verify(secondKey).release();
+    }
+
+    @Test
+    void serverErrorIsRetriedOnAnotherKey() throws Exception {
+        whenGeminiIsCalled()
+                .thenThrow(new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE))
+                .thenReturn("{\"rezults\": []}");
+
+        assertEquals("{\"rezults\": []}", service(10, Duration.ofMinutes(10)).extractDataFromPdf(new byte[0]));
+        verify(firstKey).failed();
+    }
+
+    @Test
+    void givesUpAfterTheLastAttempt() {
+        whenGeminiIsCalled()
+                .thenThrow(new ResourceAccessException("Connection reset"));
+
+        assertThrows(RuntimeException.class, () -> service(3, Duration.ofMinutes(10)).extractDataFromPdf(new byte[0]));
+        verify(restTemplate, times(3)).execute(anyString(), eq(HttpMethod.POST), any(), any(), any(), any());
+    }
+
+    @Test
+    void givesUpAtTheDeadline() {
+        whenGeminiIsCalled()
+                .thenThrow(new HttpClientErrorException(HttpStatus.TOO_MANY_REQUESTS));
+
+        assertThrows(RuntimeException.class, () -> service(1000, Duration.ZERO).extractDataFromPdf(new byte[0]));
+        verify(restTemplate, times(0)).execute(anyString(), eq(HttpMethod.POST), any(), any(), any(), any());
+    }
+
+    @Test
+    void otherClientErrorsFailAtOnce() {
+        whenGeminiIsCalled()
+                .thenThrow(new HttpClientErrorException(HttpStatus.BAD_REQUEST));
+
+        assertThrows(HttpClientErrorException.class,
+                () -> service(10, Duration.ofMinutes(10)).extractDataFromPdf(new byte[0]));
+        verify(firstKey).release();
+        verify(restTemplate, times(1)).execute(anyString(), eq(HttpMethod.POST), any(), any(), any(), any());
+    }
+
+    private OngoingStubbing<String> whenGeminiIsCalled() {
+        return when(restTemplate.<String>execute(anyString(), eq(HttpMethod.POST), any(), any(), any(), any()));
+    }
+
+    private MedicalExtractionService service(int maxAttempts, Duration deadline) {
+        return new MedicalExtractionService(restTemplate, null, pdfTextExtractionService, geminiKeyScheduler,
+                mock(GeminiCodec.class), new ExtractionMetrics(new SimpleMeterRegistry()), maxAttempts, deadline);
+    }
+
+    private static GeminiKeyScheduler.Lease lease(int keyIndex) {
+        GeminiKeyScheduler.Lease lease = mock(GeminiKeyScheduler.Lease.class);
+        when(lease.model()).thenReturn("gemini-2.5-flash");
+        when(lease.key()).thenReturn("key-" + keyIndex);
+        when(lease.keyIndex()).thenReturn(keyIndex);
+        return lease;
+    }
+}
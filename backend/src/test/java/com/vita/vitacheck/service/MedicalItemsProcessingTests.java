@@ -0,0 +1,179 @@
+package com.vita.vitacheck.service;
+
+import com.vita.vitacheck.analyte.AnalyteIndex;
+import com.vita.vitacheck.analyte.UnitCatalog;
+import com.vita.vitacheck.model.AnalyteMeasurement;
+import com.vita.vitacheck.model.AnalyteSeries;
+import com.vita.vitacheck.model.MedicalTest;
+import com.vita.vitacheck.model.MedicalTestItem;
+import com.vita.vitacheck.model.MedicalTestItemLimits;
+import com.vita.vitacheck.model.User;
+import com.vita.vitacheck.repository.AnalyteSeriesRepository;
+import com.vita.vitacheck.repository.MedicalTestRepository;
+import com.vita.vitacheck.repository.UserRepository;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MedicalItemsProcessingTests {
+
+    private static UnitCatalog unitCatalog;
+    private static AnalyteIndex analyteIndex;
+
+    @BeforeAll
+    static void setUp() throws IOException {
+        unitCatalog = new UnitCatalog(new ClassPathResource("units.json"));
+        analyteIndex = new AnalyteIndex(new ClassPathResource("analytes.json"));
+    }
+
+    @Test
+    void incrementalMaintenanceMatchesARebuild() {
+        User user = User.builder().id(1L).email("ana@example.com").build();
+        MedicalTest january = test(1L, user, LocalDate.of(2024, 1, 10), LocalDateTime.of(2024, 1, 11, 9, 0),
+                item("Glicemie", 5.0, "mmol/L", 3.9, 6.1),
+                item("Hemoglobina (HGB)", 14.0, "g/dL", 12.0, 16.0),
+                item("Feritina", 80.0, "ng/mL", 15.0, 150.0),
+                item("Test special", 3.0, "u", null, null));
+        MedicalTest march = test(2L, user, LocalDate.of(2024, 3, 5), LocalDateTime.of(2024, 3, 6, 9, 0),
+                item("Glucoza serica", 95.0, "mg/dL", 70.0, 110.0),
+                item("HGB", 140.0, "g/L", 120.0, 160.0),
+                item("Feritina serica", 50.0, "ng/mL", 15.0, 150.0),
+                item("Test special", 4.0, "u", null, null));
+        // Collected between the two, but uploaded last, so its units win
+        MedicalTest february = test(3L, user, LocalDate.of(2024, 2, 1), LocalDateTime.of(2024, 3, 7, 9, 0),
+                item("GLU", 100.0, "mg/dL", 70.0, 110.0),
+                item("Feritina", 60000.0, "pg/mL", 15000.0, 150000.0));
+
+        List<MedicalTest> tests = new ArrayList<>();
+        List<AnalyteSeries> stored = new ArrayList<>();
+        MedicalItemsProcessing processing = processing(user, tests, stored);
+        user.setSeriesVersion(processing.seriesVersion());
+
+        for (MedicalTest test : List.of(january, march, february)) {
+            tests.add(test);
+            processing.applyTest(test);
+        }
+        // Re-analysis of a bulletin replaces its points
+        february.setTestItems(List.of(
+                item("GLU", 102.0, "mg/dL", 70.0, 110.0),
+                item("Feritina", 60000.0, "pg/mL", 15000.0, 150000.0),
+                item("Colesterol", 5.2, "mmol/L", null, 5.2)));
+        processing.applyTest(february);
+        march.setFileName("martie.pdf");
+        processing.renameTest(march);
+        tests.remove(january);
+        processing.removeTest(january);
+
+        User rebuiltUser = User.builder().id(1L).email("ana@example.com").build();
+        List<AnalyteSeries> rebuilt = new ArrayList<>();
+        processing(rebuiltUser, tests, rebuilt).processTestItems(rebuiltUser);
+
+        assertEquals(snapshot(rebuilt), snapshot(stored));
+
+        AnalyteSeries glucose = find(stored, "Glucoza");
+        assertEquals(21, glucose.getAnalyteId());
+        assertEquals("mg/dL", glucose.getUnit());
+        assertEquals(List.of(3L, 2L), glucose.getMeasurements().stream().map(AnalyteMeasurement::medicalTestId).toList());
+        assertEquals(List.of(102.0, 95.0), values(glucose));
+        assertEquals("martie.pdf", glucose.getMeasurements().get(1).fileName());
+        assertEquals(List.of(14.0), values(find(stored, "Hemoglobina")));
+        assertEquals("g/dL", find(stored, "Hemoglobina").getUnit());
+        assertEquals(List.of(60000.0, 50000.0), values(find(stored, "Feritina")));
+        assertEquals("pg/mL", find(stored, "Feritina").getUnit());
+        assertEquals(List.of(201.084), values(find(stored, "Colesterol total")));
+        assertEquals(List.of(4.0), values(find(stored, "Test special")));
+    }
+
+    // The series a user ends up with, without ids and the user, in a stable order
+    private record Stored(String analyteKey, Integer analyteId, String testName, String unit, Double minReference,
+            Double maxReference, List<MedicalTestItemLimits> limits, List<AnalyteMeasurement> measurements) {
+    }
+
+    private static List<Stored> snapshot(List<AnalyteSeries> series) {
+        return series.stream()
+                .map(s -> new Stored(s.getAnalyteKey(), s.getAnalyteId(), s.getTestName(), s.getUnit(),
+                        s.getMinReference(), s.getMaxReference(), s.getLimits(), s.getMeasurements()))
+                .sorted(Comparator.comparing(Stored::analyteKey))
+                .toList();
+    }
+
+    private static AnalyteSeries find(List<AnalyteSeries> series, String analyteKey) {
+        return series.stream().filter(s -> analyteKey.equals(s.getAnalyteKey())).findFirst().orElseThrow();
+    }
+
+    private static List<Double> values(AnalyteSeries series) {
+        return series.getMeasurements().stream().map(AnalyteMeasurement::numericValue).toList();
+    }
+
+    // Backed by in-memory lists: the bulletins in collection order and the user's stored series
+    private static MedicalItemsProcessing processing(User user, List<MedicalTest> tests, List<AnalyteSeries> stored) {
+        MedicalTestRepository medicalTestRepository = mock(MedicalTestRepository.class);
+        when(medicalTestRepository.findByUserOrderByCollectionDateAscIdAsc(user)).thenAnswer(invocation -> tests.stream()
+                .sorted(Comparator.comparing(MedicalTest::getCollectionDate).thenComparing(MedicalTest::getId))
+                .toList());
+
+        AnalyteSeriesRepository analyteSeriesRepository = mock(AnalyteSeriesRepository.class);
+        AtomicLong ids = new AtomicLong();
+        when(analyteSeriesRepository.findByUser(any(User.class))).thenAnswer(invocation -> new ArrayList<>(stored));
+        when(analyteSeriesRepository.save(any(AnalyteSeries.class))).thenAnswer(invocation -> {
+            AnalyteSeries series = invocation.getArgument(0);
+            if (series.getId() == null) {
+                series.setId(ids.incrementAndGet());
+                stored.add(series);
+            }
+            return series;
+        });
+        doAnswer(invocation -> stored.remove(invocation.<AnalyteSeries>getArgument(0)))
+                .when(analyteSeriesRepository).delete(any(AnalyteSeries.class));
+        doAnswer(invocation -> {
+            invocation.<Iterable<AnalyteSeries>>getArgument(0).forEach(stored::remove);
+            return null;
+        }).when(analyteSeriesRepository).deleteAll(anyIterable());
+
+        UserRepository userRepository = mock(UserRepository.class);
+        when(userRepository.findWithLockById(anyLong())).thenReturn(Optional.of(user));
+
+        return new MedicalItemsProcessing(medicalTestRepository, analyteSeriesRepository, userRepository,
+                mock(PrincipalCache.class), unitCatalog, analyteIndex);
+    }
+
+    private static MedicalTest test(Long id, User user, LocalDate collectionDate, LocalDateTime uploadDate,
+            MedicalTestItem... items) {
+        return MedicalTest.builder()
+                .id(id)
+                .user(user)
+                .fileName("buletin-" + id + ".pdf")
+                .collectionDate(collectionDate)
+                .uploadDate(uploadDate)
+                .testItems(new ArrayList<>(List.of(items)))
+                .build();
+    }
+
+    private static MedicalTestItem item(String testName, Double value, String unit, Double min, Double max) {
+        MedicalTestItem item = new MedicalTestItem();
+        item.setTestName(testName);
+        item.setNumericValue(value);
+        item.setUnit(unit);
+        item.setMinReference(min);
+        item.setMaxReference(max);
+        return item;
+    }
+}
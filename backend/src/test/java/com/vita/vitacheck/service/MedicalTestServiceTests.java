@@ -0,0 +1,76 @@
+package com.vita.vitacheck.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vita.vitacheck.analyte.AnalyteIndex;
+import com.vita.vitacheck.model.MedicalTest;
+import com.vita.vitacheck.model.User;
+import com.vita.vitacheck.parser.LabReportParserEngine;
+import com.vita.vitacheck.repository.MedicalTestItemRepository;
+import com.vita.vitacheck.repository.MedicalTestRepository;
+import com.vita.vitacheck.repository.UserRepository;
+import com.vita.vitacheck.storage.DocumentIngestPipeline;
+import com.vita.vitacheck.storage.DocumentStorageService;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MedicalTestServiceTests {
+
+    private final MedicalTestRepository medicalTestRepository = mock(MedicalTestRepository.class);
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private final MedicalExtractionService medicalExtractionService = mock(MedicalExtractionService.class);
+    private final MedicalItemsProcessing medicalItemsProcessing = mock(MedicalItemsProcessing.class);
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+    private final MedicalTestService service = new MedicalTestService(medicalTestRepository,
+            mock(MedicalTestItemRepository.class), userRepository, medicalExtractionService,
+            mock(ExtractionCacheService.class), mock(LabReportParserEngine.class), medicalItemsProcessing,
+            mock(DocumentStorageService.class), mock(DocumentIngestPipeline.class), mock(AnalyteIndex.class),
+            new ExtractionMetrics(new SimpleMeterRegistry()), new ObjectMapper(), transactionManager);
+    private final MedicalTest test = MedicalTest.builder()
+            .id(7L)
+            .user(User.builder().id(1L).build())
+            .fileName("buletin.pdf")
+            .blobRef("fs:1")
+            .contentHash("abc123")
+            .build();
+
+    @Test
+    void geminiIsCalledBeforeTheTransactionOpens() throws Exception {
+        when(medicalTestRepository.findById(7L)).thenReturn(Optional.of(test));
+        when(medicalExtractionService.extractDataFromPdf(any())).thenReturn("""
+                {"laboratory": "Synevo", "collection_date": "15-03-2024",
+                 "rezults": [{"test_name": "Glicemie", "numeric_value": 92, "um": "mg/dL"}]}""");
+
+        service.analyzeTest(7L);
+
+        InOrder order = inOrder(medicalExtractionService, transactionManager, medicalItemsProcessing);
+        order.verify(medicalExtractionService).extractDataFromPdf(any());
+        order.verify(transactionManager).getTransaction(any());
+        order.verify(medicalItemsProcessing).applyTest(test);
+        order.verify(transactionManager).commit(any());
+        assertEquals(1, test.getTestItems().size());
+        verify(userRepository).incrementDataVersion(1L);
+    }
+
+    @Test
+    void failedExtractionOpensNoTransaction() throws Exception {
+        when(medicalTestRepository.findById(7L)).thenReturn(Optional.of(test));
+        when(medicalExtractionService.extractDataFromPdf(any())).thenThrow(new RuntimeException("Gemini did not answer"));
+
+        assertThrows(RuntimeException.class, () -> service.analyzeTest(7L));
+        verify(transactionManager, never()).getTransaction(any());
+    }
+}
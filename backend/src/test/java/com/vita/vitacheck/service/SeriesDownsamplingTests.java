@@ -0,0 +1,133 @@
+package com.vita.vitacheck.service;
+
+import com.vita.vitacheck.model.AnalyteMeasurement;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SeriesDownsamplingTests {
+
+    private static final LocalDate START = LocalDate.of(2020, 1, 1);
+
+    @Test
+    void shortSeriesIsReturnedUnchanged() {
+        List<SeriesDownsampling.Point> points = series(10, new Random(1), 0);
+
+        assertSame(points, SeriesDownsampling.largestTriangleThreeBuckets(points, 10));
+        assertSame(points, SeriesDownsampling.largestTriangleThreeBuckets(points, 50));
+    }
+
+    @Test
+    void keepsTheFirstAndLastPointsWithinMaxPoints() {
+        List<SeriesDownsampling.Point> points = series(500, new Random(2), 0);
+
+        for (int maxPoints : new int[] { 3, 10, 100, 499 }) {
+            List<SeriesDownsampling.Point> sampled = SeriesDownsampling.largestTriangleThreeBuckets(points, maxPoints);
+
+            assertTrue(sampled.size() <= maxPoints, "at most " + maxPoints + ", got " + sampled.size());
+            assertSame(points.get(0), sampled.get(0));
+            assertSame(points.get(points.size() - 1), sampled.get(sampled.size() - 1));
+            assertInOrder(sampled);
+        }
+    }
+
+    @Test
+    void everyOutOfRangePointSurvivesLttb() {
+        List<SeriesDownsampling.Point> points = series(500, new Random(3), 0.05);
+        List<SeriesDownsampling.Point> outOfRange = outOfRange(points);
+
+        List<SeriesDownsampling.Point> sampled = SeriesDownsampling.largestTriangleThreeBuckets(points, 50);
+
+        assertFalse(outOfRange.isEmpty());
+        assertTrue(sampled.size() <= 50);
+        assertTrue(sampled.containsAll(outOfRange));
+        assertInOrder(sampled);
+    }
+
+    @Test
+    void outOfRangePointsMayExceedMaxPoints() {
+        List<SeriesDownsampling.Point> points = series(200, new Random(4), 0.5);
+        List<SeriesDownsampling.Point> outOfRange = outOfRange(points);
+
+        List<SeriesDownsampling.Point> sampled = SeriesDownsampling.largestTriangleThreeBuckets(points, 20);
+
+        assertTrue(outOfRange.size() > 20);
+        assertTrue(sampled.containsAll(outOfRange));
+        // Only the forced points and the two ends, nothing picked by LTTB on top of them
+        long ends = outOfRange.contains(points.get(0)) ? 0 : 1;
+        ends += outOfRange.contains(points.get(points.size() - 1)) ? 0 : 1;
+        assertEquals(outOfRange.size() + ends, sampled.size());
+    }
+
+    @Test
+    void monthlyAggregationKeepsOutOfRangePoints() {
+        List<SeriesDownsampling.Point> points = SeriesDownsampling.points(List.of(
+                measurement(START, 90),
+                measurement(START.plusDays(10), 130),
+                measurement(START.plusDays(20), 95)));
+
+        List<SeriesDownsampling.Point> monthly = SeriesDownsampling.aggregateMonthly(points);
+
+        assertEquals(2, monthly.size());
+        SeriesDownsampling.Point month = monthly.get(0);
+        assertEquals(START, month.date());
+        assertEquals(105.0, month.value(), 1e-9);
+        assertEquals(90.0, month.min());
+        assertEquals(130.0, month.max());
+        assertEquals(3, month.count());
+        assertNull(month.source());
+        assertSame(points.get(1), monthly.get(1));
+    }
+
+    @Test
+    void monthWithOnePointIsPassedThrough() {
+        List<SeriesDownsampling.Point> points = SeriesDownsampling.points(List.of(
+                measurement(START, 90),
+                measurement(START.plusDays(5), 92),
+                measurement(START.plusMonths(1), 140)));
+
+        List<SeriesDownsampling.Point> monthly = SeriesDownsampling.aggregateMonthly(points);
+
+        assertEquals(2, monthly.size());
+        assertEquals(2, monthly.get(0).count());
+        assertSame(points.get(2), monthly.get(1));
+        assertTrue(monthly.get(1).outOfRange());
+    }
+
+    // One measurement a day, with reference range 70-110; outOfRangeShare of them fall outside it
+    private static List<SeriesDownsampling.Point> series(int n, Random random, double outOfRangeShare) {
+        List<AnalyteMeasurement> measurements = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            double value = random.nextDouble() < outOfRangeShare
+                    ? 120 + random.nextDouble() * 40
+                    : 75 + random.nextDouble() * 30;
+            measurements.add(measurement(START.plusDays(i), value));
+        }
+        return SeriesDownsampling.points(measurements);
+    }
+
+    private static AnalyteMeasurement measurement(LocalDate date, double value) {
+        return new AnalyteMeasurement(1L, "buletin.pdf", date.toString(), date, date.atStartOfDay(), value,
+                "mg/dL", 70.0, 110.0, null);
+    }
+
+    private static List<SeriesDownsampling.Point> outOfRange(List<SeriesDownsampling.Point> points) {
+        return points.stream().filter(SeriesDownsampling.Point::outOfRange).toList();
+    }
+
+    private static void assertInOrder(List<SeriesDownsampling.Point> points) {
+        for (int i = 1; i < points.size(); i++) {
+            assertTrue(points.get(i - 1).date().isBefore(points.get(i).date()));
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.vita.vitacheck.storage;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import static com.vita.vitacheck.storage.ChunkedEncryption.DEFAULT_CHUNK_SIZE;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ChunkedEncryptionTests {
+
+    private static final SecretKey KEY = new SecretKeySpec(new byte[32], "AES");
+
+    @Test
+    void roundTripsAroundChunkBoundaries() throws IOException {
+        for (int size : new int[] { 0, 1, DEFAULT_CHUNK_SIZE - 1, DEFAULT_CHUNK_SIZE, DEFAULT_CHUNK_SIZE + 1,
+                3 * DEFAULT_CHUNK_SIZE + 17 }) {
+            byte[] plaintext = randomBytes(size);
+            byte[] blob = encrypt(plaintext);
+
+            int chunkSize = ChunkedEncryption.chunkSize(blob);
+            assertEquals(size, ChunkedEncryption.plaintextSize(blob.length, chunkSize), "size " + size);
+            assertArrayEquals(plaintext, decrypt(blob, 0).readAllBytes(), "size " + size);
+        }
+    }
+
+    @Test
+    void headerCarriesTheKeyVersion() throws IOException {
+        byte[] blob = ChunkedEncryption.encrypt(new ByteArrayInputStream(randomBytes(10)), 3, KEY).readAllBytes();
+
+        assertEquals(3, ChunkedEncryption.keyVersion(blob));
+        assertThrows(IllegalArgumentException.class,
+                () -> ChunkedEncryption.encrypt(InputStream.nullInputStream(), 256, KEY));
+    }
+
+    @Test
+    void decryptsFromAChunkInTheMiddle() throws IOException {
+        byte[] plaintext = randomBytes(3 * DEFAULT_CHUNK_SIZE + 17);
+        byte[] blob = encrypt(plaintext);
+
+        // A range that starts inside chunk 1 and ends inside chunk 2
+        long offset = DEFAULT_CHUNK_SIZE + 100;
+        int length = DEFAULT_CHUNK_SIZE;
+        InputStream plaintextFromChunk = decrypt(blob, 1);
+        plaintextFromChunk.skipNBytes(offset - DEFAULT_CHUNK_SIZE);
+
+        assertArrayEquals(Arrays.copyOfRange(plaintext, (int) offset, (int) offset + length),
+                plaintextFromChunk.readNBytes(length));
+    }
+
+    @Test
+    void decryptsTheLastPartialChunkAlone() throws IOException {
+        byte[] plaintext = randomBytes(2 * DEFAULT_CHUNK_SIZE + 5);
+        byte[] blob = encrypt(plaintext);
+
+        assertArrayEquals(Arrays.copyOfRange(plaintext, 2 * DEFAULT_CHUNK_SIZE, plaintext.length),
+                decrypt(blob, 2).readAllBytes());
+    }
+
+    @Test
+    void tamperedChunkFailsAuthentication() throws IOException {
+        byte[] blob = encrypt(randomBytes(2 * DEFAULT_CHUNK_SIZE + 5));
+        blob[(int) ChunkedEncryption.chunkOffset(1, DEFAULT_CHUNK_SIZE) + 10] ^= 1;
+
+        InputStream plaintext = decrypt(blob, 0);
+        IOException e = assertThrows(IOException.class, plaintext::readAllBytes);
+        assertEquals("Chunk 1 of the document failed authentication", e.getMessage());
+    }
+
+    @Test
+    void blobTruncatedAtAChunkBoundaryFails() throws IOException {
+        byte[] blob = encrypt(randomBytes(2 * DEFAULT_CHUNK_SIZE));
+        byte[] truncated = Arrays.copyOf(blob, (int) ChunkedEncryption.chunkOffset(1, DEFAULT_CHUNK_SIZE));
+
+        assertThrows(IOException.class, () -> decrypt(truncated, 0).readAllBytes());
+    }
+
+    private static byte[] encrypt(byte[] plaintext) throws IOException {
+        return ChunkedEncryption.encrypt(new ByteArrayInputStream(plaintext), 1, KEY).readAllBytes();
+    }
+
+    // What DocumentStorageService does for a read starting in firstChunk
+    private static InputStream decrypt(byte[] blob, long firstChunk) throws IOException {
+        byte[] header = Arrays.copyOf(blob, ChunkedEncryption.HEADER_SIZE);
+        int chunkSize = ChunkedEncryption.chunkSize(header);
+        long chunkCount = ChunkedEncryption.chunkCount(blob.length, chunkSize);
+        int offset = (int) ChunkedEncryption.chunkOffset(firstChunk, chunkSize);
+        InputStream chunks = new ByteArrayInputStream(blob, offset, blob.length - offset);
+        return ChunkedEncryption.decrypt(header, chunks, firstChunk, chunkCount, KEY);
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,130 @@
+package com.vita.vitacheck.storage;
+
+import com.vita.vitacheck.config.EncryptionConfig;
+import com.vita.vitacheck.repository.MedicalTestRepository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+
+class DocumentStorageServiceTests {
+
+    private static final SecretKeySpec KEY_1 = key(1);
+    private static final SecretKeySpec KEY_2 = key(2);
+
+    private DocumentStorageService storage;
+    private MemoryBlobStore store;
+
+    @BeforeEach
+    void setUp() {
+        EncryptionConfig.keysByVersion.clear();
+        EncryptionConfig.keysByVersion.put(1, KEY_1);
+        EncryptionConfig.secretKey = KEY_1;
+        EncryptionConfig.keyVersion = 1;
+        EncryptionConfig.baselineKeyVersion = 1;
+
+        store = new MemoryBlobStore();
+        storage = new DocumentStorageService(List.of(store), mock(MedicalTestRepository.class), "mem");
+    }
+
+    @Test
+    void rangeReadReturnsOnlyTheRequestedBytes() throws IOException {
+        byte[] plaintext = randomBytes(3 * ChunkedEncryption.DEFAULT_CHUNK_SIZE + 17);
+        StoredDocument document = storage.store(new ByteArrayInputStream(plaintext));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        storage.copyTo(document.blobRef(), 70_000, 100_000, out);
+
+        assertEquals(plaintext.length, document.contentLength());
+        assertArrayEquals(Arrays.copyOfRange(plaintext, 70_000, 170_000), out.toByteArray());
+    }
+
+    @Test
+    void documentOfThePreviousKeyIsReadableAfterRotation() throws IOException {
+        byte[] plaintext = randomBytes(1000);
+        StoredDocument document = storage.store(new ByteArrayInputStream(plaintext));
+
+        EncryptionConfig.keysByVersion.put(2, KEY_2);
+        EncryptionConfig.secretKey = KEY_2;
+        EncryptionConfig.keyVersion = 2;
+        StoredDocument rotated = storage.store(new ByteArrayInputStream(plaintext));
+
+        assertEquals(1, ChunkedEncryption.keyVersion(store.blobs.get(document.blobRef())));
+        assertEquals(2, ChunkedEncryption.keyVersion(store.blobs.get(rotated.blobRef())));
+        assertArrayEquals(plaintext, storage.readAll(document.blobRef()));
+        assertArrayEquals(plaintext, storage.readAll(rotated.blobRef()));
+    }
+
+    @Test
+    void documentOfARetiredKeyFails() throws IOException {
+        StoredDocument document = storage.store(new ByteArrayInputStream(randomBytes(1000)));
+        EncryptionConfig.keysByVersion.remove(1);
+
+        assertThrows(IOException.class, () -> storage.readAll(document.blobRef()));
+    }
+
+    private static final class MemoryBlobStore implements BlobStore {
+
+        private final Map<String, byte[]> blobs = new ConcurrentHashMap<>();
+
+        @Override
+        public String scheme() {
+            return "mem";
+        }
+
+        @Override
+        public String write(InputStream content) throws IOException {
+            String reference = "mem:" + blobs.size();
+            blobs.put(reference, content.readAllBytes());
+            return reference;
+        }
+
+        @Override
+        public <T> T read(String reference, long offset, BlobReader<T> reader) throws IOException {
+            byte[] blob = blobs.get(reference);
+            return reader.read(new ByteArrayInputStream(blob, (int) offset, blob.length - (int) offset));
+        }
+
+        @Override
+        public long size(String reference) {
+            return blobs.get(reference).length;
+        }
+
+        @Override
+        public void delete(String reference) {
+            blobs.remove(reference);
+        }
+
+        @Override
+        public List<String> list() {
+            return List.copyOf(blobs.keySet());
+        }
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static SecretKeySpec key(int seed) {
+        byte[] bytes = new byte[32];
+        Arrays.fill(bytes, (byte) seed);
+        return new SecretKeySpec(bytes, "AES");
+    }
+}
@@ -0,0 +1,61 @@
+package com.vita.vitacheck.storage;
+
+import com.vita.vitacheck.repository.MedicalTestRepository;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class OrphanBlobSweeperTests {
+
+    @TempDir
+    Path root;
+
+    @Test
+    void identicalContentGetsSeparateBlobs() throws IOException {
+        FileSystemBlobStore store = new FileSystemBlobStore(root.toString());
+
+        String first = store.write(new ByteArrayInputStream(new byte[] { 1, 2, 3 }));
+        String second = store.write(new ByteArrayInputStream(new byte[] { 1, 2, 3 }));
+
+        assertNotEquals(first, second);
+        store.delete(first);
+        assertEquals(3, store.size(second));
+    }
+
+    @Test
+    void deletesBlobsUnreferencedAtTwoSweepsInARow() throws IOException {
+        FileSystemBlobStore store = new FileSystemBlobStore(root.toString());
+        String referenced = store.write(new ByteArrayInputStream(new byte[] { 1 }));
+        String orphan = store.write(new ByteArrayInputStream(new byte[] { 2 }));
+
+        MedicalTestRepository repository = mock(MedicalTestRepository.class);
+        when(repository.findBlobRefsIn(any())).thenAnswer(invocation -> invocation.<Collection<String>>getArgument(0)
+                .stream()
+                .filter(referenced::equals)
+                .toList());
+        OrphanBlobSweeper sweeper = new OrphanBlobSweeper(List.of(store), repository);
+
+        sweeper.sweep();
+        assertEquals(2, store.list().size());
+
+        // Written after the first sweep, so it survives the second one
+        String recent = store.write(new ByteArrayInputStream(new byte[] { 3 }));
+        sweeper.sweep();
+        assertEquals(List.of(recent, referenced).stream().sorted().toList(),
+                store.list().stream().sorted().toList());
+        assertFalse(store.list().contains(orphan));
+    }
+}
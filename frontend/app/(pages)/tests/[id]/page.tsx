@@ -262,10 +262,25 @@ function ViewTestContent() {
 
         try {
             await testsApi.post(`/${id}/analyze`);
-            setMessage("Test analyzed successfully!");
-            await fetchData();
+
+            // Analysis runs in the background, poll until the job is finished
+            let status = "QUEUED";
+            let errorMessage: string | null = null;
+            while (status === "QUEUED" || status === "RUNNING") {
+                await new Promise((resolve) => setTimeout(resolve, 2000));
+                const response = await testsApi.get(`/${id}/analysis-status`);
+                status = response.data.status;
+                errorMessage = response.data.errorMessage;
+            }
+
+            if (status === "DONE") {
+                setMessage("Test analyzed successfully!");
+                await fetchData();
+            } else {
+                setMessage(errorMessage || "An error occurred");
+            }
         } catch (error: any) {
-            setMessage(error.response?.data || "An error occurred");
+            setMessage(error.response?.data?.errorMessage || "An error occurred");
         } finally {
             setIsAnalyzing(false);
         }